@@ -14,36 +14,44 @@
 
 package com.liferay.portal.security.auth;
 
-import java.net.URLEncoder;
-
+import com.liferay.portal.NoSuchUserException;
 import com.liferay.portal.kernel.exception.SystemException;
 import com.liferay.portal.kernel.log.Log;
 import com.liferay.portal.kernel.log.LogFactoryUtil;
 import com.liferay.portal.kernel.util.*;
-import com.liferay.portal.model.CompanyConstants;
 import com.liferay.portal.model.User;
-import com.liferay.portal.security.ldap.LDAPSettingsUtil;
+import com.liferay.portal.security.ldap.LDAPContextPool;
+import com.liferay.portal.security.ldap.LDAPContextPoolTimeoutException;
+import com.liferay.portal.security.ldap.LDAPContextPoolUtil;
+import com.liferay.portal.security.ldap.LDAPServerHealthUtil;
+import com.liferay.portal.security.ldap.LDAPServerProfile;
+import com.liferay.portal.security.ldap.LDAPServerProfileUtil;
 import com.liferay.portal.security.ldap.PortalLDAPImporterUtil;
 import com.liferay.portal.security.ldap.PortalLDAPUtil;
+import com.liferay.portal.security.pwd.PwdEncryptor;
 import com.liferay.portal.service.UserLocalServiceUtil;
 import com.liferay.portal.servlet.filters.sso.cas.CASFilter;
 import com.liferay.portal.util.PortalUtil;
-import com.liferay.portal.util.PrefsPropsUtil;
 import com.liferay.portal.util.PropsValues;
 
-import javax.naming.Binding;
+import javax.naming.InterruptedNamingException;
 import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
 import javax.naming.directory.Attributes;
-import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
 import javax.naming.ldap.LdapContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
-import java.util.Properties;
 
-import org.jasig.cas.client.util.CommonUtils;
-import org.jasig.cas.client.util.XmlUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.jasig.cas.client.validation.Assertion;
 import org.jasig.cas.client.validation.Cas20ProxyReceivingTicketValidationFilter;
 
@@ -58,6 +66,8 @@ public class CAS3AutoLogin implements AutoLogin {
 
     public final static String CONST_CAS_ASSERTION = "_const_cas_assertion_";
 
+	public static final String CAS_AUTO_LOGIN_HOLDER = "CAS_AUTO_LOGIN_HOLDER";
+
 	public String[] login(
 		HttpServletRequest request, HttpServletResponse response) {
 
@@ -66,10 +76,9 @@ public class CAS3AutoLogin implements AutoLogin {
 		try {
 			long companyId = PortalUtil.getCompanyId(request);
 
-			if (!PrefsPropsUtil.getBoolean(
-					companyId, PropsKeys.CAS_AUTH_ENABLED,
-					PropsValues.CAS_AUTH_ENABLED)) {
+			CASSettings casSettings = CASSettingsUtil.getSettings(companyId);
 
+			if (!casSettings.isAuthEnabled()) {
 				return credentials;
 			}
 
@@ -77,10 +86,19 @@ public class CAS3AutoLogin implements AutoLogin {
 
             // Get principal name directly from CAS Assertion instead of via Liferay CASFilter)
             // String login = (String)session.getAttribute(CASFilter.LOGIN);
-            Assertion assertion = null;
+            Assertion assertion = (Assertion) session.getAttribute(CONST_CAS_ASSERTION);
             String login = null;
-            if (session.getAttribute(CONST_CAS_ASSERTION) != null) {
-                assertion = (Assertion) session.getAttribute(CONST_CAS_ASSERTION);
+            if (assertion != null) {
+                CASAutoLoginHolder casAutoLoginHolder = (CASAutoLoginHolder)session.getAttribute(CAS_AUTO_LOGIN_HOLDER);
+
+                // credentials already computed for this very assertion, a new
+                // assertion after re-authentication never matches
+                if ((casAutoLoginHolder != null) && casAutoLoginHolder.isValidFor(assertion)) {
+                    setRedirect(request);
+
+                    return casAutoLoginHolder.getCredentials();
+                }
+
                 login = assertion.getPrincipal().getName();
             }
 
@@ -88,18 +106,58 @@ public class CAS3AutoLogin implements AutoLogin {
 				return credentials;
 			}
 
-			String authType = PrefsPropsUtil.getString(
-				companyId, PropsKeys.COMPANY_SECURITY_AUTH_TYPE,
-				PropsValues.COMPANY_SECURITY_AUTH_TYPE);
-
 			User user = null;
 
-			if (PrefsPropsUtil.getBoolean(
-					companyId, PropsKeys.CAS_IMPORT_FROM_LDAP,
-					PropsValues.CAS_IMPORT_FROM_LDAP)) {
+			boolean importFromLDAP = casSettings.isImportFromLDAP();
+
+			if (casSettings.isImportFromAssertion()) {
+
+				// The validation response already carries the user's
+				// attributes, so LDAP is not needed
+
+				importFromLDAP = false;
+
+				try {
+					user = CASAssertionImporterUtil.importUser(
+						casSettings, assertion);
+				}
+				catch (Exception e) {
+					if (_log.isWarnEnabled()) {
+						_log.warn(
+							"Unable to import " + login +
+								" from CAS attributes: " + e.getMessage());
+					}
+
+					if (_log.isDebugEnabled()) {
+						_log.debug(e, e);
+					}
+				}
+			}
+
+			long ldapSyncInterval = casSettings.getLDAPSyncInterval();
+
+			if (importFromLDAP && (ldapSyncInterval > 0)) {
+				if (CASLDAPSyncUtil.isSynced(
+						companyId, login, ldapSyncInterval)) {
+
+					// Synced recently enough, use the local user
+
+					importFromLDAP = false;
+				}
+				else if (hasLocalUser(casSettings, login)) {
+					// Refresh a stale user in the background and carry on
+					// with the local user
+
+					importLDAPUserAsync(
+						companyId, casSettings.isAuthTypeScreenName(), login);
+
+					importFromLDAP = false;
+				}
+			}
 
+			if (importFromLDAP) {
 				try {
-					if (authType.equals(CompanyConstants.AUTH_TYPE_SN)) {
+					if (casSettings.isAuthTypeScreenName()) {
 						user = importLDAPUser(
 							companyId, StringPool.BLANK, login);
 					}
@@ -109,11 +167,43 @@ public class CAS3AutoLogin implements AutoLogin {
 					}
 				}
 				catch (SystemException se) {
+
+					// LDAP is unavailable, fall through to the local user
+
+					if (_log.isWarnEnabled()) {
+						_log.warn(
+							"Unable to import " + login + " from LDAP: " +
+								se.getMessage());
+					}
+
+					if (_log.isDebugEnabled()) {
+						_log.debug(se, se);
+					}
 				}
 			}
 
-			if (user == null) {
-				if (authType.equals(CompanyConstants.AUTH_TYPE_SN)) {
+			long userId = 0;
+			String password = null;
+
+			if (user != null) {
+				if (PropsValues.CAS_USER_CACHE_ENABLED) {
+					CASUserCacheUtil.put(
+						companyId, casSettings.isAuthTypeScreenName(), login,
+						user);
+				}
+
+				userId = user.getUserId();
+				password = user.getPassword();
+			}
+			else if (PropsValues.CAS_USER_CACHE_ENABLED) {
+				CASUserCacheEntry casUserCacheEntry = CASUserCacheUtil.getUser(
+					companyId, casSettings.isAuthTypeScreenName(), login);
+
+				userId = casUserCacheEntry.getUserId();
+				password = casUserCacheEntry.getPassword();
+			}
+			else {
+				if (casSettings.isAuthTypeScreenName()) {
 					user = UserLocalServiceUtil.getUserByScreenName(
 						companyId, login);
 				}
@@ -121,31 +211,93 @@ public class CAS3AutoLogin implements AutoLogin {
 					user = UserLocalServiceUtil.getUserByEmailAddress(
 						companyId, login);
 				}
+
+				userId = user.getUserId();
+				password = user.getPassword();
 			}
 
-			String redirect = ParamUtil.getString(request, "redirect");
+			if (PropsValues.CAS_MEMBERSHIP_SYNC_ENABLED) {
+				try {
+					CASMembershipSyncUtil.syncMemberships(
+						companyId, userId, assertion);
+				}
+				catch (Exception e) {
+					if (_log.isWarnEnabled()) {
+						_log.warn(
+							"Unable to synchronize the memberships of " +
+								login + ": " + e.getMessage());
+					}
+
+					// Do not skip the next import of a user whose
+					// memberships are out of sync
 
-			if (Validator.isNotNull(redirect)) {
-				request.setAttribute(AutoLogin.AUTO_LOGIN_REDIRECT, redirect);
+					CASLDAPSyncUtil.remove(companyId, login);
+				}
 			}
 
+			setRedirect(request);
+
             credentials = new String[3];
 
-            credentials[0] = String.valueOf(user.getUserId());
+            credentials[0] = String.valueOf(userId);
 
             // check for ClearPass enabled
-            if (PrefsPropsUtil.getBoolean(companyId, PropsKeys.CAS_CLEARPASS_ENABLED, PropsValues.CAS_CLEARPASS_ENABLED)) {
-                // CAS3AutoLogin is fired on every request, so we need to check if we've already got the password
-                if (session.getAttribute("CAS_CLEARPASS") == null) {
-                    session.setAttribute("CAS_CLEARPASS", CAS3AutoLogin.getClearTextPassword(assertion, companyId));
-                }
-                credentials[1] = (String) session.getAttribute("CAS_CLEARPASS");
+            if (casSettings.isClearPassEnabled()) {
+                // concurrent requests of the session share a single ClearPass fetch
+                CASClearPassUtil.getClearPassHandle(session, casSettings.getClearPassUrl());
+            }
+
+            String clearPassword = null;
+
+            if (casSettings.isClearPassEnabled() && !casSettings.isClearPassLazy()) {
+                clearPassword = getClearPassword(session, login);
+            }
+
+            if (clearPassword != null) {
+                credentials[1] = clearPassword;
                 credentials[2] = Boolean.FALSE.toString(); // password encrypted? nope.
             } else {
-                credentials[1] = user.getPassword();
+                // lazy ClearPass fetches the password on first use through
+                // CASClearPassUtil, a failed eager fetch falls back to the
+                // encrypted password as well
+                credentials[1] = password;
                 credentials[2] = Boolean.TRUE.toString();
             }
 
+			String[] holderCredentials = credentials;
+
+			if ((clearPassword != null) &&
+				isPasswordVerified(clearPassword, password)) {
+
+				// The portal hashes a cleartext password on every auto login,
+				// so once it is known to match the stored hash, later auto
+				// logins of the session pass the stored hash instead
+
+				holderCredentials = new String[] {
+					credentials[0], password, Boolean.TRUE.toString()
+				};
+			}
+
+			if (casSettings.isClearPassEnabled() &&
+				!casSettings.isClearPassLazy() && (clearPassword == null)) {
+
+				// Do not pin the fallback to the encrypted password for the
+				// rest of the session, the next request fetches it again
+
+				if (_log.isDebugEnabled()) {
+					_log.debug(
+						"Not remembering the credentials of " + login +
+							" until ClearPass releases the password");
+				}
+
+				session.removeAttribute(CAS_AUTO_LOGIN_HOLDER);
+			}
+			else {
+				session.setAttribute(
+					CAS_AUTO_LOGIN_HOLDER,
+					new CASAutoLoginHolder(assertion, holderCredentials));
+			}
+
 			return credentials;
 		}
 		catch (Exception e) {
@@ -156,22 +308,67 @@ public class CAS3AutoLogin implements AutoLogin {
 	}
 
 
-    private static String getClearTextPassword(Assertion assertion, Long companyId) {
+	/**
+	 * Returns the cleartext password from ClearPass within the back channel
+	 * time budget, or <code>null</code> if CAS could not provide it in time.
+	 */
+	protected String getClearPassword(HttpSession session, String login) {
+		boolean started = CASTimeBudgetUtil.start(
+			PropsValues.CAS_BACK_CHANNEL_TIME_BUDGET);
+
+		try {
+			return CASClearPassUtil.getPassword(session);
+		}
+		catch (Exception e) {
+			if (_log.isWarnEnabled()) {
+				_log.warn(
+					"Unable to get the ClearPass password of " + login +
+						", logging in with the encrypted password: " +
+							e.getMessage());
+			}
+
+			return null;
+		}
+		finally {
+			if (started) {
+				CASTimeBudgetUtil.end();
+			}
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the cleartext password hashes to the
+	 * stored password hash of the user.
+	 */
+	protected boolean isPasswordVerified(
+		String clearPassword, String password) {
+
+		if (Validator.isNull(password)) {
+			return false;
+		}
+
+		try {
+			String encryptedPassword = PwdEncryptor.encrypt(
+				clearPassword, password);
+
+			return password.equals(encryptedPassword);
+		}
+		catch (Exception e) {
+			if (_log.isDebugEnabled()) {
+				_log.debug(e, e);
+			}
 
-        String clearPassUrl;
-        try {
-                clearPassUrl = PrefsPropsUtil.getString(companyId, PropsKeys.CAS_CLEARPASS_URL, PropsValues.CAS_CLEARPASS_URL);
-            } catch (SystemException e) {
-                throw new RuntimeException(e);
-        }
-        final String proxyTicket = assertion.getPrincipal().getProxyTicketFor(clearPassUrl);
-        final String clearPassRequestUrl = clearPassUrl + "?" + "ticket=" + proxyTicket + "&" + "service=" + URLEncoder.encode(clearPassUrl);
-        final String response = CommonUtils.getResponseFromServer(clearPassRequestUrl);
-        final String password = XmlUtils.getTextForElement(response, "credentials");
+			return false;
+		}
+	}
 
-        return password;
-    }
+	protected void setRedirect(HttpServletRequest request) {
+		String redirect = ParamUtil.getString(request, "redirect");
 
+		if (Validator.isNotNull(redirect)) {
+			request.setAttribute(AutoLogin.AUTO_LOGIN_REDIRECT, redirect);
+		}
+	}
 
 	/**
 	 * @deprecated Use <code>importLDAPUser</code>.
@@ -180,117 +377,339 @@ public class CAS3AutoLogin implements AutoLogin {
 		return importLDAPUser(companyId, StringPool.BLANK, screenName);
 	}
 
+	/**
+	 * Imports the user from the attributes found in the LDAP server. The
+	 * import is skipped if the attributes are the same as the last time the
+	 * user was imported and the user still exists locally.
+	 */
 	protected User importLDAPUser(
 			long ldapServerId, long companyId, String emailAddress,
-			String screenName)
+			String screenName, Attributes attributes)
 		throws Exception {
 
-		LdapContext ldapContext = null;
+		String login = screenName;
 
-		try {
-			String postfix = LDAPSettingsUtil.getPropertyPostfix(ldapServerId);
+		if (Validator.isNotNull(emailAddress)) {
+			login = emailAddress;
+		}
 
-			String baseDN = PrefsPropsUtil.getString(
-				companyId, PropsKeys.LDAP_BASE_DN + postfix);
+		String digest = null;
 
-			ldapContext = PortalLDAPUtil.getContext(ldapServerId, companyId);
+		if (PropsValues.CAS_LDAP_SKIP_UNCHANGED) {
+			digest = CASLDAPSyncUtil.getDigest(ldapServerId, attributes);
 
-			if (ldapContext == null) {
-				throw new SystemException("Failed to bind to the LDAP server");
-			}
+			if (digest.equals(CASLDAPSyncUtil.getDigest(companyId, login))) {
+				try {
+					User user = null;
 
-			String filter = PrefsPropsUtil.getString(
-				companyId, PropsKeys.LDAP_AUTH_SEARCH_FILTER + postfix);
+					if (Validator.isNotNull(emailAddress)) {
+						user = UserLocalServiceUtil.getUserByEmailAddress(
+							companyId, emailAddress);
+					}
+					else {
+						user = UserLocalServiceUtil.getUserByScreenName(
+							companyId, screenName);
+					}
 
-			if (_log.isDebugEnabled()) {
-				_log.debug("Search filter before transformation " + filter);
+					CASLDAPSyncUtil.incrementSkippedImportCount();
+
+					return user;
+				}
+				catch (NoSuchUserException nsue) {
+				}
 			}
+		}
 
-			filter = StringUtil.replace(
-				filter,
-				new String[] {
-					"@company_id@", "@email_address@", "@screen_name@"
-				},
-				new String[] {
-					String.valueOf(companyId), emailAddress, screenName
-				});
+		User user = doImportLDAPUser(ldapServerId, companyId, attributes);
 
-			if (_log.isDebugEnabled()) {
-				_log.debug("Search filter after transformation " + filter);
-			}
+		CASLDAPSyncUtil.incrementAppliedImportCount();
 
-			Properties userMappings = LDAPSettingsUtil.getUserMappings(
-				ldapServerId, companyId);
+		if (digest != null) {
+			CASLDAPSyncUtil.setDigest(companyId, login, digest);
+		}
 
-			String userMappingsScreenName = GetterUtil.getString(
-				userMappings.getProperty("screenName")).toLowerCase();
+		return user;
+	}
 
-			SearchControls searchControls = new SearchControls(
-				SearchControls.SUBTREE_SCOPE, 1, 0,
-				new String[] {userMappingsScreenName}, false, false);
+	protected User doImportLDAPUser(
+			long ldapServerId, long companyId, Attributes attributes)
+		throws Exception {
 
-			NamingEnumeration<SearchResult> enu = ldapContext.search(
-				baseDN, filter, searchControls);
+		LDAPContextPool ldapContextPool = LDAPContextPoolUtil.getPool(
+			ldapServerId, companyId);
 
-			if (enu.hasMoreElements()) {
-				if (_log.isDebugEnabled()) {
-					_log.debug("Search filter returned at least one result");
+		LdapContext ldapContext = null;
+		boolean invalid = false;
+
+		try {
+			ldapContext = ldapContextPool.borrowContext();
+
+			return PortalLDAPImporterUtil.importLDAPUser(
+				ldapServerId, companyId, ldapContext, attributes,
+				StringPool.BLANK);
+		}
+		catch (Exception e) {
+			if (e instanceof NamingException) {
+				invalid = true;
+			}
+
+			throw toSystemException(e);
+		}
+		finally {
+			if (ldapContext != null) {
+				if (invalid) {
+					ldapContextPool.invalidateContext(ldapContext);
+				}
+				else {
+					ldapContextPool.returnContext(ldapContext);
 				}
+			}
+		}
+	}
+
+	protected User importLDAPUser(
+			long ldapServerId, long companyId, String emailAddress,
+			String screenName)
+		throws Exception {
 
-				Binding binding = enu.nextElement();
+		Attributes attributes = searchLDAPUser(
+			ldapServerId, companyId, emailAddress, screenName);
 
-				Attributes attributes = PortalLDAPUtil.getUserAttributes(
-					ldapServerId, companyId, ldapContext,
-					PortalLDAPUtil.getNameInNamespace(
-						ldapServerId, companyId, binding));
+		if (attributes == null) {
+			return null;
+		}
 
-				return PortalLDAPImporterUtil.importLDAPUser(
-					ldapServerId, companyId, ldapContext, attributes,
-					StringPool.BLANK);
+		return importLDAPUser(
+			ldapServerId, companyId, emailAddress, screenName, attributes);
+	}
+
+	protected boolean hasLocalUser(CASSettings casSettings, String login)
+		throws Exception {
+
+		long companyId = casSettings.getCompanyId();
+
+		try {
+			if (PropsValues.CAS_USER_CACHE_ENABLED) {
+				CASUserCacheUtil.getUser(
+					companyId, casSettings.isAuthTypeScreenName(), login);
+			}
+			else if (casSettings.isAuthTypeScreenName()) {
+				UserLocalServiceUtil.getUserByScreenName(companyId, login);
 			}
 			else {
-				return null;
+				UserLocalServiceUtil.getUserByEmailAddress(companyId, login);
 			}
+
+			return true;
 		}
-		catch (Exception e) {
-			if (_log.isWarnEnabled()) {
-				_log.warn("Problem accessing LDAP server " + e.getMessage());
+		catch (NoSuchUserException nsue) {
+			return false;
+		}
+	}
+
+	/**
+	 * Imports the user from LDAP. A page fans out into many parallel requests
+	 * for the same freshly authenticated user, so concurrent imports of the
+	 * same principal are collapsed into one and share its result. Requests
+	 * that wait for another request's import give up once the LDAP search
+	 * timeout has passed for every server the import may search, and then
+	 * carry on as if LDAP were unavailable.
+	 */
+	protected User importLDAPUser(
+			final long companyId, final String emailAddress,
+			final String screenName)
+		throws Exception {
+
+		CASSettings casSettings = CASSettingsUtil.getSettings(companyId);
+
+		long timeout = casSettings.getLDAPSearchTimeout();
+
+		if (!casSettings.isLDAPSearchParallel()) {
+			timeout *= Math.max(1, casSettings.getLDAPServerIds().length);
+		}
+
+		String key =
+			companyId + StringPool.POUND + emailAddress + StringPool.POUND +
+				screenName;
+
+		try {
+			return _importLDAPUserSingleFlight.execute(
+				key,
+				new Callable<User>() {
+
+					public User call() throws Exception {
+						return doImportLDAPUser(
+							companyId, emailAddress, screenName);
+					}
+
+				},
+				timeout);
+		}
+		catch (TimeoutException te) {
+			throw new SystemException(
+				"Timed out after " + timeout + " ms waiting for the LDAP " +
+					"import of " + screenName + emailAddress);
+		}
+	}
+
+	protected void importLDAPUserAsync(
+		final long companyId, final boolean authTypeScreenName,
+		final String login) {
+
+		if (!CASLDAPSyncUtil.startRefresh(companyId, login)) {
+			return;
+		}
+
+		Runnable runnable = new Runnable() {
+
+			public void run() {
+				try {
+					if (authTypeScreenName) {
+						importLDAPUser(companyId, StringPool.BLANK, login);
+					}
+					else {
+						importLDAPUser(companyId, login, StringPool.BLANK);
+					}
+				}
+				catch (Exception e) {
+					if (_log.isWarnEnabled()) {
+						_log.warn(
+							"Unable to refresh " + login + " from LDAP: " +
+								e.getMessage());
+					}
+				}
+				finally {
+					CASLDAPSyncUtil.endRefresh(companyId, login);
+				}
 			}
 
+		};
+
+		if (!CASExecutorUtil.execute(runnable)) {
+			CASLDAPSyncUtil.endRefresh(companyId, login);
+		}
+	}
+
+	protected User doImportLDAPUser(
+			long companyId, String emailAddress, String screenName)
+		throws Exception {
+
+		String login = screenName;
+
+		if (Validator.isNotNull(emailAddress)) {
+			login = emailAddress;
+		}
+
+		if (CASLDAPNegativeCacheUtil.contains(companyId, login)) {
 			if (_log.isDebugEnabled()) {
-				_log.debug(e, e);
+				_log.debug(
+					"Skipping LDAP for " + login +
+						" which was recently not found in any LDAP servers");
 			}
 
+			return null;
+		}
+
+		if (!_ldapBulkhead.tryAcquire()) {
 			throw new SystemException(
-				"Problem accessing LDAP server " + e.getMessage());
+				"Too many concurrent LDAP imports, rejecting " + login);
 		}
-		finally {
-			if (ldapContext != null) {
-				ldapContext.close();
+
+		try {
+			CASCircuitBreaker casCircuitBreaker = getLDAPCircuitBreaker(
+				companyId);
+
+			if (casCircuitBreaker == null) {
+				return doImportLDAPUser(
+					companyId, emailAddress, screenName, login);
+			}
+
+			if (!casCircuitBreaker.allowRequest()) {
+				throw new SystemException(
+					"LDAP circuit breaker of company " + companyId +
+						" is open, rejecting " + login);
 			}
+
+			try {
+				User user = doImportLDAPUser(
+					companyId, emailAddress, screenName, login);
+
+				casCircuitBreaker.recordSuccess();
+
+				return user;
+			}
+			catch (Exception e) {
+				casCircuitBreaker.recordFailure();
+
+				throw e;
+			}
+		}
+		finally {
+			_ldapBulkhead.release();
 		}
 	}
 
-	protected User importLDAPUser(
-			long companyId, String emailAddress, String screenName)
+	protected User doImportLDAPUser(
+			long companyId, String emailAddress, String screenName,
+			String login)
 		throws Exception {
 
-		long[] ldapServerIds = StringUtil.split(
-			PrefsPropsUtil.getString(companyId, "ldap.server.ids"), 0L);
+		CASSettings casSettings = CASSettingsUtil.getSettings(companyId);
+
+		long[] ldapServerIds = null;
 
-		if (ldapServerIds.length <= 0) {
-			ldapServerIds = new long[] {0};
+		if (casSettings.isLDAPSearchParallel()) {
+			ldapServerIds = LDAPServerHealthUtil.getAvailableServerIds(
+				companyId, casSettings.getLDAPServerIds());
+		}
+		else {
+			ldapServerIds = LDAPServerHealthUtil.getOrderedServerIds(
+				companyId, casSettings.getLDAPServerIds());
 		}
 
-		for (long ldapServerId : ldapServerIds) {
-			User user = importLDAPUser(
-				ldapServerId, companyId, emailAddress, screenName);
+		if ((ldapServerIds.length == 0) &&
+			(casSettings.getLDAPServerIds().length > 0)) {
 
-			if (user != null) {
-				return user;
+			// Not finding the user is only meaningful if some server was
+			// asked, so the negative cache is left alone
+
+			throw new SystemException(
+				"No healthy LDAP servers for company " + companyId);
+		}
+
+		User user = null;
+
+		if (casSettings.isLDAPSearchParallel() && (ldapServerIds.length > 1)) {
+			user = importLDAPUserParallel(
+				ldapServerIds, companyId, emailAddress, screenName,
+				casSettings.getLDAPSearchTimeout());
+		}
+		else {
+			for (long ldapServerId : ldapServerIds) {
+				user = importLDAPUser(
+					ldapServerId, companyId, emailAddress, screenName);
+
+				if (user != null) {
+					break;
+				}
 			}
 		}
 
+		if (user != null) {
+			if (casSettings.getLDAPSyncInterval() > 0) {
+				CASLDAPSyncUtil.markSynced(companyId, login);
+			}
+
+			return user;
+		}
+
+		// The user may live on an ejected server, so only remember the miss
+		// if every configured server was searched
+
+		if (ldapServerIds.length == casSettings.getLDAPServerIds().length) {
+			CASLDAPNegativeCacheUtil.put(companyId, login);
+		}
+
 		if (_log.isDebugEnabled()) {
 			if (Validator.isNotNull(emailAddress)) {
 				_log.debug(
@@ -307,6 +726,258 @@ public class CAS3AutoLogin implements AutoLogin {
 		return null;
 	}
 
+	protected CASCircuitBreaker getLDAPCircuitBreaker(long companyId) {
+		if (!PropsValues.CAS_LDAP_CIRCUIT_BREAKER_ENABLED) {
+			return null;
+		}
+
+		return CASCircuitBreakerUtil.getCircuitBreaker(
+			"ldap." + companyId,
+			PropsValues.CAS_LDAP_CIRCUIT_BREAKER_FAILURE_THRESHOLD,
+			PropsValues.CAS_LDAP_CIRCUIT_BREAKER_OPEN_TIME * Time.SECOND);
+	}
+
+	/**
+	 * Searches all LDAP servers at once and imports the user from the first
+	 * server, in the order given, that has it. Searches that are still
+	 * running once a match is found are cancelled. If no server has the user
+	 * but some server failed or did not answer within the search timeout, a
+	 * <code>SystemException</code> is thrown since the user may still exist.
+	 */
+	protected User importLDAPUserParallel(
+			long[] ldapServerIds, final long companyId,
+			final String emailAddress, final String screenName,
+			long searchTimeout)
+		throws Exception {
+
+		List<FutureTask<Attributes>> futureTasks =
+			new ArrayList<FutureTask<Attributes>>(ldapServerIds.length);
+
+		for (final long ldapServerId : ldapServerIds) {
+			FutureTask<Attributes> futureTask = new FutureTask<Attributes>(
+				new Callable<Attributes>() {
+
+					public Attributes call() throws Exception {
+						return searchLDAPUser(
+							ldapServerId, companyId, emailAddress, screenName);
+					}
+
+				});
+
+			futureTasks.add(futureTask);
+
+			if (!CASExecutorUtil.execute(futureTask)) {
+				futureTask.run();
+			}
+		}
+
+		long deadline = System.currentTimeMillis() + searchTimeout;
+
+		boolean complete = true;
+
+		try {
+			for (int i = 0; i < ldapServerIds.length; i++) {
+				FutureTask<Attributes> futureTask = futureTasks.get(i);
+
+				Attributes attributes = null;
+
+				try {
+					attributes = futureTask.get(
+						Math.max(0, deadline - System.currentTimeMillis()),
+						TimeUnit.MILLISECONDS);
+				}
+				catch (ExecutionException ee) {
+					complete = false;
+
+					if (_log.isDebugEnabled()) {
+						_log.debug(ee.getCause(), ee.getCause());
+					}
+				}
+				catch (TimeoutException te) {
+					complete = false;
+
+					if (_log.isWarnEnabled()) {
+						_log.warn(
+							"LDAP server " + ldapServerIds[i] +
+								" did not answer within " + searchTimeout +
+									" ms");
+					}
+				}
+
+				if (attributes != null) {
+					return importLDAPUser(
+						ldapServerIds[i], companyId, emailAddress, screenName,
+						attributes);
+				}
+			}
+
+			if (!complete) {
+				throw new SystemException(
+					"Unable to search all LDAP servers for " + screenName +
+						emailAddress);
+			}
+
+			return null;
+		}
+		finally {
+			for (FutureTask<Attributes> futureTask : futureTasks) {
+				futureTask.cancel(true);
+			}
+		}
+	}
+
+	protected Attributes searchLDAPUser(
+			long ldapServerId, long companyId, String emailAddress,
+			String screenName)
+		throws Exception {
+
+		LDAPContextPool ldapContextPool = LDAPContextPoolUtil.getPool(
+			ldapServerId, companyId);
+
+		LdapContext ldapContext = null;
+		boolean failed = false;
+		boolean invalid = false;
+		boolean recordHealth = true;
+		long startTime = System.currentTimeMillis();
+
+		try {
+			LDAPServerProfile ldapServerProfile =
+				LDAPServerProfileUtil.getProfile(ldapServerId, companyId);
+
+			ldapContext = ldapContextPool.borrowContext();
+
+			if (_log.isDebugEnabled()) {
+				_log.debug(
+					"Search filter before transformation " +
+						ldapServerProfile.getAuthSearchFilterTemplate());
+			}
+
+			String filter = ldapServerProfile.getAuthSearchFilter(
+				emailAddress, screenName);
+
+			if (_log.isDebugEnabled()) {
+				_log.debug("Search filter after transformation " + filter);
+			}
+
+			// The search controls request the mapped attributes with the
+			// search itself instead of reading them with a second call once
+			// the user is found
+
+			NamingEnumeration<SearchResult> enu = ldapContext.search(
+				ldapServerProfile.getBaseDN(), filter,
+				ldapServerProfile.getUserSearchControls());
+
+			try {
+				if (!enu.hasMoreElements()) {
+					return null;
+				}
+
+				if (_log.isDebugEnabled()) {
+					_log.debug("Search filter returned at least one result");
+				}
+
+				SearchResult searchResult = enu.nextElement();
+
+				Attributes attributes = searchResult.getAttributes();
+
+				if (!isRangedAttributes(attributes)) {
+					return attributes;
+				}
+
+				// Large multivalued attributes are returned in ranges which
+				// only PortalLDAPUtil knows how to read
+
+				return PortalLDAPUtil.getUserAttributes(
+					ldapServerId, companyId, ldapContext,
+					PortalLDAPUtil.getNameInNamespace(
+						ldapServerId, companyId, searchResult));
+			}
+			finally {
+				enu.close();
+			}
+		}
+		catch (Exception e) {
+			failed = true;
+
+			if (e instanceof NamingException) {
+				invalid = true;
+			}
+
+			// Running out of pooled contexts or being cancelled because
+			// another server answered first says nothing about this server
+
+			if ((e instanceof LDAPContextPoolTimeoutException) ||
+				(e instanceof InterruptedNamingException) ||
+				Thread.currentThread().isInterrupted()) {
+
+				recordHealth = false;
+			}
+
+			throw toSystemException(e);
+		}
+		finally {
+			long latency = System.currentTimeMillis() - startTime;
+
+			if (recordHealth && failed) {
+				LDAPServerHealthUtil.recordFailure(
+					ldapServerId, companyId, latency);
+			}
+			else if (recordHealth) {
+				LDAPServerHealthUtil.recordSuccess(
+					ldapServerId, companyId, latency);
+			}
+
+			if (ldapContext != null) {
+				if (invalid) {
+					ldapContextPool.invalidateContext(ldapContext);
+				}
+				else {
+					ldapContextPool.returnContext(ldapContext);
+				}
+			}
+		}
+	}
+
+	protected boolean isRangedAttributes(Attributes attributes)
+		throws NamingException {
+
+		NamingEnumeration<String> enu = attributes.getIDs();
+
+		try {
+			while (enu.hasMore()) {
+				String id = enu.next();
+
+				if (id.indexOf(";range=") != -1) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+		finally {
+			enu.close();
+		}
+	}
+
+	protected SystemException toSystemException(Exception e) {
+		if (_log.isWarnEnabled()) {
+			_log.warn("Problem accessing LDAP server " + e.getMessage());
+		}
+
+		if (_log.isDebugEnabled()) {
+			_log.debug(e, e);
+		}
+
+		return new SystemException(
+			"Problem accessing LDAP server " + e.getMessage());
+	}
+
 	private static Log _log = LogFactoryUtil.getLog(CAS3AutoLogin.class);
 
+	private static CASSingleFlight<User> _importLDAPUserSingleFlight =
+		new CASSingleFlight<User>();
+	private static CASBulkhead _ldapBulkhead = new CASBulkhead(
+		"ldap", PropsValues.CAS_LDAP_BULKHEAD_MAX_CONCURRENT,
+		PropsValues.CAS_LDAP_BULKHEAD_MAX_WAIT);
+
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+
+import java.io.StringReader;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.jasig.cas.client.validation.Cas20ServiceTicketValidator;
+
+/**
+ * Service ticket validator that reads the CAS 3 attributes of a validation
+ * response with {@link CASResponseParser} instead of repeated string scans.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CAS3ServiceTicketValidator extends Cas20ServiceTicketValidator {
+
+	public CAS3ServiceTicketValidator(String casServerUrlPrefix) {
+		super(casServerUrlPrefix);
+	}
+
+	protected Map<String, Object> extractCustomAttributes(String xml) {
+		try {
+			return CASResponseParser.getAttributes(new StringReader(xml));
+		}
+		catch (Exception e) {
+			_log.error("Unable to parse CAS attributes", e);
+
+			return Collections.emptyMap();
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(
+		CAS3ServiceTicketValidator.class);
+
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.NoSuchUserException;
+import com.liferay.portal.UserEmailAddressException;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.search.Indexer;
+import com.liferay.portal.kernel.search.IndexerRegistryUtil;
+import com.liferay.portal.kernel.util.LocaleUtil;
+import com.liferay.portal.kernel.util.StringPool;
+import com.liferay.portal.kernel.util.Validator;
+import com.liferay.portal.model.Contact;
+import com.liferay.portal.model.User;
+import com.liferay.portal.service.ContactLocalServiceUtil;
+import com.liferay.portal.service.ServiceContext;
+import com.liferay.portal.service.UserLocalServiceUtil;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.jasig.cas.client.authentication.AttributePrincipal;
+import org.jasig.cas.client.validation.Assertion;
+
+/**
+ * Creates and updates portal users from the attributes released by CAS with
+ * the validation response, without going to LDAP. Attributes are mapped to
+ * user fields with <code>cas.assertion.user.mappings</code>, which can be
+ * overridden per company. The supported
+ * fields are <code>emailAddress</code>, <code>firstName</code>,
+ * <code>jobTitle</code>, <code>lastName</code>, <code>middleName</code>, and
+ * <code>screenName</code>. The field the company authenticates by is always
+ * taken from the CAS principal name.
+ *
+ * <p>
+ * An existing user is only written to if one of the mapped fields changed. A
+ * new user of a company that authenticates by screen name needs an email
+ * address attribute.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASAssertionImporterUtil {
+
+	public static User importUser(
+			final CASSettings casSettings, final Assertion assertion)
+		throws Exception {
+
+		String key =
+			casSettings.getCompanyId() + StringPool.POUND +
+				assertion.getPrincipal().getName();
+
+		return _importUserSingleFlight.execute(
+			key,
+			new Callable<User>() {
+
+				public User call() throws Exception {
+					return doImportUser(casSettings, assertion);
+				}
+
+			});
+	}
+
+	protected static User addUser(
+			long companyId, String screenName, String emailAddress,
+			String firstName, String middleName, String lastName,
+			String jobTitle)
+		throws Exception {
+
+		if (_log.isDebugEnabled()) {
+			_log.debug(
+				"Adding user " + screenName + emailAddress +
+					" from CAS attributes");
+		}
+
+		long creatorUserId = 0;
+		boolean autoPassword = true;
+		String password1 = StringPool.BLANK;
+		String password2 = StringPool.BLANK;
+		boolean autoScreenName = Validator.isNull(screenName);
+		long facebookId = 0;
+		String openId = StringPool.BLANK;
+		int prefixId = 0;
+		int suffixId = 0;
+		boolean male = true;
+		int birthdayMonth = Calendar.JANUARY;
+		int birthdayDay = 1;
+		int birthdayYear = 1970;
+		long[] groupIds = null;
+		long[] organizationIds = null;
+		long[] roleIds = null;
+		long[] userGroupIds = null;
+		boolean sendEmail = false;
+
+		ServiceContext serviceContext = new ServiceContext();
+
+		return UserLocalServiceUtil.addUser(
+			creatorUserId, companyId, autoPassword, password1, password2,
+			autoScreenName, screenName, emailAddress, facebookId, openId,
+			LocaleUtil.getDefault(), firstName, middleName, lastName,
+			prefixId, suffixId, male, birthdayMonth, birthdayDay,
+			birthdayYear, jobTitle, groupIds, organizationIds, roleIds,
+			userGroupIds, sendEmail, serviceContext);
+	}
+
+	protected static User doImportUser(
+			CASSettings casSettings, Assertion assertion)
+		throws Exception {
+
+		AttributePrincipal attributePrincipal = assertion.getPrincipal();
+
+		Map<?, ?> attributes = attributePrincipal.getAttributes();
+
+		String login = attributePrincipal.getName();
+
+		Map<String, String> userMappings =
+			casSettings.getAssertionUserMappings();
+
+		String screenName = getValue(userMappings, attributes, "screenName");
+		String emailAddress = getValue(
+			userMappings, attributes, "emailAddress");
+
+		if (casSettings.isAuthTypeScreenName()) {
+			screenName = login;
+		}
+		else {
+			emailAddress = login;
+		}
+
+		String firstName = getValue(userMappings, attributes, "firstName");
+		String middleName = getValue(userMappings, attributes, "middleName");
+		String lastName = getValue(userMappings, attributes, "lastName");
+		String jobTitle = getValue(userMappings, attributes, "jobTitle");
+
+		long companyId = casSettings.getCompanyId();
+
+		User user = null;
+
+		try {
+			if (casSettings.isAuthTypeScreenName()) {
+				user = UserLocalServiceUtil.getUserByScreenName(
+					companyId, screenName);
+			}
+			else {
+				user = UserLocalServiceUtil.getUserByEmailAddress(
+					companyId, emailAddress);
+			}
+		}
+		catch (NoSuchUserException nsue) {
+			if (Validator.isNull(emailAddress)) {
+				String attributeName = userMappings.get("emailAddress");
+
+				if (attributeName == null) {
+					throw new UserEmailAddressException(
+						"Unable to add user " + login + " because " +
+							"emailAddress is not mapped to a CAS attribute");
+				}
+
+				throw new UserEmailAddressException(
+					"Unable to add user " + login + " because CAS did not " +
+						"release the " + attributeName + " attribute " +
+							"mapped to emailAddress");
+			}
+
+			if (Validator.isNull(firstName)) {
+				firstName = login;
+			}
+
+			return addUser(
+				companyId, screenName, emailAddress, firstName, middleName,
+				lastName, jobTitle);
+		}
+
+		return updateUser(
+			user, emailAddress, firstName, middleName, lastName, jobTitle);
+	}
+
+	/**
+	 * Returns the first value of the attribute mapped to the field, or
+	 * <code>null</code> if the field is not mapped or not released by CAS.
+	 */
+	protected static String getValue(
+		Map<String, String> userMappings, Map<?, ?> attributes,
+		String field) {
+
+		String attributeName = userMappings.get(field);
+
+		if (attributeName == null) {
+			return null;
+		}
+
+		Object value = attributes.get(attributeName);
+
+		if (value instanceof Collection<?>) {
+			Iterator<?> itr = ((Collection<?>)value).iterator();
+
+			if (!itr.hasNext()) {
+				return null;
+			}
+
+			value = itr.next();
+		}
+
+		if (value == null) {
+			return null;
+		}
+
+		return value.toString();
+	}
+
+	/**
+	 * Returns <code>true</code> if the asserted value is present and differs
+	 * from the current value. Fields CAS does not release are left alone.
+	 */
+	protected static boolean isChanged(String value, String currentValue) {
+		if ((value == null) || value.equals(currentValue)) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> if the email address is valid and not used by
+	 * another user of the company. The portal checks this when users change
+	 * their email address, while a plain user update would fail on the unique
+	 * index at every login.
+	 */
+	protected static boolean isEmailAddressAvailable(
+			User user, String emailAddress)
+		throws Exception {
+
+		if (!Validator.isEmailAddress(emailAddress)) {
+			if (_log.isWarnEnabled()) {
+				_log.warn(
+					"Not updating user " + user.getUserId() +
+						" with the invalid email address " + emailAddress);
+			}
+
+			return false;
+		}
+
+		try {
+			User emailAddressUser = UserLocalServiceUtil.getUserByEmailAddress(
+				user.getCompanyId(), emailAddress);
+
+			if (emailAddressUser.getUserId() == user.getUserId()) {
+				return true;
+			}
+
+			if (_log.isWarnEnabled()) {
+				_log.warn(
+					"Not updating user " + user.getUserId() +
+						" with the email address " + emailAddress +
+							" of user " + emailAddressUser.getUserId());
+			}
+
+			return false;
+		}
+		catch (NoSuchUserException nsue) {
+			return true;
+		}
+	}
+
+	protected static User updateUser(
+			User user, String emailAddress, String firstName,
+			String middleName, String lastName, String jobTitle)
+		throws Exception {
+
+		boolean userChanged = false;
+		boolean contactChanged = false;
+
+		if (emailAddress != null) {
+			emailAddress = emailAddress.trim().toLowerCase();
+		}
+
+		if (isChanged(emailAddress, user.getEmailAddress()) &&
+			isEmailAddressAvailable(user, emailAddress)) {
+
+			user.setEmailAddress(emailAddress);
+
+			userChanged = true;
+		}
+
+		if (isChanged(firstName, user.getFirstName())) {
+			user.setFirstName(firstName);
+
+			contactChanged = true;
+		}
+
+		if (isChanged(middleName, user.getMiddleName())) {
+			user.setMiddleName(middleName);
+
+			contactChanged = true;
+		}
+
+		if (isChanged(lastName, user.getLastName())) {
+			user.setLastName(lastName);
+
+			contactChanged = true;
+		}
+
+		if (isChanged(jobTitle, user.getJobTitle())) {
+			user.setJobTitle(jobTitle);
+
+			contactChanged = true;
+		}
+
+		if (!userChanged && !contactChanged) {
+			return user;
+		}
+
+		if (_log.isDebugEnabled()) {
+			_log.debug(
+				"Updating user " + user.getUserId() + " from CAS attributes");
+		}
+
+		user = UserLocalServiceUtil.updateUser(user);
+
+		if (contactChanged) {
+			Contact contact = ContactLocalServiceUtil.getContact(
+				user.getContactId());
+
+			contact.setFirstName(user.getFirstName());
+			contact.setMiddleName(user.getMiddleName());
+			contact.setLastName(user.getLastName());
+			contact.setJobTitle(user.getJobTitle());
+
+			ContactLocalServiceUtil.updateContact(contact);
+		}
+
+		Indexer indexer = IndexerRegistryUtil.getIndexer(User.class);
+
+		indexer.reindex(user);
+
+		return user;
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(
+		CASAssertionImporterUtil.class);
+
+	private static CASSingleFlight<User> _importUserSingleFlight =
+		new CASSingleFlight<User>();
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import java.io.Serializable;
+
+import org.jasig.cas.client.validation.Assertion;
+
+/**
+ * Immutable result of a successful CAS auto login, stored in the session so
+ * later requests can reuse the credentials instead of resolving the user
+ * again. A holder is only valid for the exact {@link Assertion} instance it
+ * was derived from; the assertion is not serialized, so a replicated session
+ * simply recomputes its holder once. With ClearPass, the holder keeps the
+ * stored password hash once the cleartext password was verified against it,
+ * so that the portal does not hash the cleartext password again on every
+ * auto login. No holder is stored while an eager ClearPass fetch keeps
+ * failing, so that every request retries it.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASAutoLoginHolder implements Serializable {
+
+	public CASAutoLoginHolder(Assertion assertion, String[] credentials) {
+		_assertion = assertion;
+		_credentials = credentials;
+	}
+
+	/**
+	 * Returns the credentials computed for the assertion. The array is shared
+	 * by every request of the session and must not be modified.
+	 */
+	public String[] getCredentials() {
+		return _credentials;
+	}
+
+	public boolean isValidFor(Assertion assertion) {
+		if ((assertion != null) && (_assertion == assertion)) {
+			return true;
+		}
+
+		return false;
+	}
+
+	private transient Assertion _assertion;
+	private final String[] _credentials;
+
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent map that holds at most <code>maxSize</code> entries. Every put is
+ * recorded in an eviction queue, and once the queue grows past the maximum
+ * size the oldest put is undone unless its entry has been written again
+ * since. Entries are therefore evicted in the order they were last written,
+ * and puts never scan the map.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASBoundedMap<V> {
+
+	public CASBoundedMap(int maxSize) {
+		_maxSize = Math.max(1, maxSize);
+	}
+
+	public void clear() {
+		_entries.clear();
+		_evictionQueue.clear();
+		_evictionQueueSize.set(0);
+	}
+
+	public V get(String key) {
+		Entry<V> entry = _entries.get(key);
+
+		if (entry == null) {
+			return null;
+		}
+
+		return entry.getValue();
+	}
+
+	public long getEvictionCount() {
+		return _evictionCount.get();
+	}
+
+	/**
+	 * Returns the keys of the map. Removing a key from the set removes its
+	 * entry.
+	 */
+	public Set<String> keySet() {
+		return _entries.keySet();
+	}
+
+	public void put(String key, V value) {
+		Entry<V> entry = new Entry<V>(key, value);
+
+		_entries.put(key, entry);
+
+		_evictionQueue.offer(entry);
+
+		int size = _evictionQueueSize.incrementAndGet();
+
+		while (size > _maxSize) {
+			Entry<V> evictedEntry = _evictionQueue.poll();
+
+			if (evictedEntry == null) {
+				break;
+			}
+
+			size = _evictionQueueSize.decrementAndGet();
+
+			// Entries written again since were replaced by a newer entry
+
+			if (_entries.remove(evictedEntry.getKey(), evictedEntry)) {
+				_evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	public void remove(String key) {
+		_entries.remove(key);
+	}
+
+	/**
+	 * Removes the entry of the key only if it still has the given value.
+	 */
+	public boolean remove(String key, V value) {
+		Entry<V> entry = _entries.get(key);
+
+		if ((entry == null) || !entry.getValue().equals(value)) {
+			return false;
+		}
+
+		return _entries.remove(key, entry);
+	}
+
+	public int size() {
+		return _entries.size();
+	}
+
+	private ConcurrentMap<String, Entry<V>> _entries =
+		new ConcurrentHashMap<String, Entry<V>>();
+	private AtomicLong _evictionCount = new AtomicLong();
+	private Queue<Entry<V>> _evictionQueue =
+		new ConcurrentLinkedQueue<Entry<V>>();
+	private AtomicInteger _evictionQueueSize = new AtomicInteger();
+	private int _maxSize;
+
+	/**
+	 * One put of a value. Entries are compared by identity, so an old put of
+	 * an equal value never evicts a newer one.
+	 */
+	private static class Entry<V> {
+
+		public Entry(String key, V value) {
+			_key = key;
+			_value = value;
+		}
+
+		public String getKey() {
+			return _key;
+		}
+
+		public V getValue() {
+			return _value;
+		}
+
+		private String _key;
+		private V _value;
+
+	}
+
+}
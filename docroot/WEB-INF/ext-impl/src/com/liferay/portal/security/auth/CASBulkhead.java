@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how many request threads may be inside a call to a remote service
+ * at once, so that a hanging service ties up at most
+ * <code>maxConcurrent</code> threads. Callers wait up to
+ * <code>maxWait</code> milliseconds for a permit and must call
+ * {@link #release()} once they acquired one.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASBulkhead {
+
+	public CASBulkhead(String name, int maxConcurrent, long maxWait) {
+		_name = name;
+		_maxConcurrent = Math.max(1, maxConcurrent);
+		_maxWait = maxWait;
+
+		_semaphore = new Semaphore(_maxConcurrent);
+	}
+
+	public int getActiveCount() {
+		return _maxConcurrent - _semaphore.availablePermits();
+	}
+
+	public int getMaxConcurrent() {
+		return _maxConcurrent;
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	public long getRejectedCount() {
+		return _rejectedCount.get();
+	}
+
+	public void release() {
+		_semaphore.release();
+	}
+
+	public boolean tryAcquire() {
+		boolean acquired = false;
+
+		try {
+			acquired = _semaphore.tryAcquire(_maxWait, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (!acquired) {
+			_rejectedCount.incrementAndGet();
+		}
+
+		return acquired;
+	}
+
+	private int _maxConcurrent;
+	private long _maxWait;
+	private String _name;
+	private AtomicLong _rejectedCount = new AtomicLong();
+	private Semaphore _semaphore;
+
+}
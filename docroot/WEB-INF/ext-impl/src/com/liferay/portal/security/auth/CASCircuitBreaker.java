@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker guarding calls to a remote service from the CAS login
+ * path. The breaker opens after <code>failureThreshold</code> consecutive
+ * failures and rejects calls for <code>openTime</code> milliseconds. It then
+ * turns half open and lets a single probe call through. The breaker closes if
+ * the probe succeeds and opens again if it fails.
+ *
+ * <p>
+ * Callers that are allowed through with {@link #allowRequest()} must report
+ * the outcome with {@link #recordSuccess()} or {@link #recordFailure()}.
+ * Breakers created through {@link CASCircuitBreakerUtil} are exported as JMX
+ * MBeans.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASCircuitBreaker implements CASCircuitBreakerMBean {
+
+	public static final String STATE_CLOSED = "closed";
+
+	public static final String STATE_HALF_OPEN = "half-open";
+
+	public static final String STATE_OPEN = "open";
+
+	public CASCircuitBreaker(
+		String name, int failureThreshold, long openTime) {
+
+		_name = name;
+		_failureThreshold = Math.max(1, failureThreshold);
+		_openTime = openTime;
+	}
+
+	public boolean allowRequest() {
+		synchronized (this) {
+			if (_state.equals(STATE_CLOSED)) {
+				return true;
+			}
+
+			// A probe that never reported back does not keep the breaker half
+			// open forever, another probe is let through after the open time
+
+			long now = System.currentTimeMillis();
+
+			if (now >= (_openedTime + _openTime)) {
+				_state = STATE_HALF_OPEN;
+				_openedTime = now;
+
+				return true;
+			}
+		}
+
+		_rejectedCount.incrementAndGet();
+
+		return false;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return _consecutiveFailures;
+	}
+
+	public long getFailureCount() {
+		return _failureCount.get();
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	public long getRejectedCount() {
+		return _rejectedCount.get();
+	}
+
+	public synchronized String getState() {
+		return _state;
+	}
+
+	public long getSuccessCount() {
+		return _successCount.get();
+	}
+
+	public void recordFailure() {
+		_failureCount.incrementAndGet();
+
+		synchronized (this) {
+			_consecutiveFailures++;
+
+			if (_state.equals(STATE_HALF_OPEN) ||
+				(_state.equals(STATE_CLOSED) &&
+				 (_consecutiveFailures >= _failureThreshold))) {
+
+				if (_log.isWarnEnabled()) {
+					_log.warn(
+						"Opening circuit breaker " + _name + " after " +
+							_consecutiveFailures + " consecutive failures");
+				}
+
+				_state = STATE_OPEN;
+				_openedTime = System.currentTimeMillis();
+			}
+		}
+	}
+
+	public void recordSuccess() {
+		_successCount.incrementAndGet();
+
+		synchronized (this) {
+			_consecutiveFailures = 0;
+
+			if (!_state.equals(STATE_CLOSED)) {
+				if (_log.isInfoEnabled()) {
+					_log.info("Closing circuit breaker " + _name);
+				}
+
+				_state = STATE_CLOSED;
+			}
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(CASCircuitBreaker.class);
+
+	private int _consecutiveFailures;
+	private AtomicLong _failureCount = new AtomicLong();
+	private int _failureThreshold;
+	private String _name;
+	private long _openedTime;
+	private long _openTime;
+	private AtomicLong _rejectedCount = new AtomicLong();
+	private String _state = STATE_CLOSED;
+	private AtomicLong _successCount = new AtomicLong();
+
+}
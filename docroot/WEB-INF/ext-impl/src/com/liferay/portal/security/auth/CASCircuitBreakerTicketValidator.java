@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jasig.cas.client.validation.Assertion;
+import org.jasig.cas.client.validation.TicketValidationException;
+import org.jasig.cas.client.validation.TicketValidator;
+
+/**
+ * Ticket validator that guards another validator with a circuit breaker and
+ * a timeout. The Jasig validators read the response with a plain
+ * <code>URLConnection</code> that cannot be given a timeout, so with a
+ * timeout set the validation runs on {@link CASValidationExecutorUtil} and
+ * the request thread gives up waiting once the timeout has passed. If every
+ * validation thread is busy, the ticket is rejected right away rather than
+ * validated on the request thread without a timeout.
+ *
+ * <p>
+ * A ticket rejected by the CAS server counts as a success of the breaker
+ * since the server answered. A validation that times out before a thread
+ * picked it up, or that no thread was available for, is not counted against
+ * the breaker since the CAS server was never called.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASCircuitBreakerTicketValidator implements TicketValidator {
+
+	public CASCircuitBreakerTicketValidator(
+		TicketValidator ticketValidator, CASCircuitBreaker casCircuitBreaker,
+		long timeout) {
+
+		_ticketValidator = ticketValidator;
+		_casCircuitBreaker = casCircuitBreaker;
+		_timeout = timeout;
+	}
+
+	public Assertion validate(final String ticket, final String service)
+		throws TicketValidationException {
+
+		if ((_casCircuitBreaker != null) &&
+			!_casCircuitBreaker.allowRequest()) {
+
+			throw new TicketValidationException(
+				"Circuit breaker " + _casCircuitBreaker.getName() +
+					" is open, not validating the ticket");
+		}
+
+		final AtomicBoolean started = new AtomicBoolean();
+
+		FutureTask<Assertion> futureTask = new FutureTask<Assertion>(
+			new Callable<Assertion>() {
+
+				public Assertion call() throws Exception {
+					started.set(true);
+
+					return _ticketValidator.validate(ticket, service);
+				}
+
+			});
+
+		if (_timeout <= 0) {
+			futureTask.run();
+		}
+		else if (!CASValidationExecutorUtil.execute(futureTask)) {
+			throw new TicketValidationException(
+				"All CAS validation threads are busy, not validating the " +
+					"ticket");
+		}
+
+		boolean recordResult = true;
+		boolean success = false;
+
+		try {
+			Assertion assertion = null;
+
+			if (_timeout > 0) {
+				assertion = futureTask.get(_timeout, TimeUnit.MILLISECONDS);
+			}
+			else {
+				assertion = futureTask.get();
+			}
+
+			success = true;
+
+			return assertion;
+		}
+		catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+
+			if (cause instanceof TicketValidationException) {
+				success = true;
+
+				throw (TicketValidationException)cause;
+			}
+
+			throw new TicketValidationException(cause);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+
+			throw new TicketValidationException(ie);
+		}
+		catch (TimeoutException te) {
+			futureTask.cancel(true);
+
+			if (!started.get()) {
+				recordResult = false;
+
+				throw new TicketValidationException(
+					"No thread was available to validate the ticket within " +
+						_timeout + " ms");
+			}
+
+			throw new TicketValidationException(
+				"CAS server did not validate the ticket within " + _timeout +
+					" ms");
+		}
+		finally {
+			if ((_casCircuitBreaker != null) && recordResult) {
+				if (success) {
+					_casCircuitBreaker.recordSuccess();
+				}
+				else {
+					_casCircuitBreaker.recordFailure();
+				}
+			}
+		}
+	}
+
+	private CASCircuitBreaker _casCircuitBreaker;
+	private TicketValidator _ticketValidator;
+	private long _timeout;
+
+}
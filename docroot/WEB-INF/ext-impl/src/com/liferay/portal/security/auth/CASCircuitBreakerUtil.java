@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the circuit breakers used by the CAS login path, so that their
+ * state can be read from the script console. Each breaker is also registered
+ * with the platform MBean server under
+ * <code>com.liferay.portal.security.auth:type=CASCircuitBreaker</code> for
+ * monitoring.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASCircuitBreakerUtil {
+
+	public static CASCircuitBreaker getCircuitBreaker(
+		String name, int failureThreshold, long openTime) {
+
+		CASCircuitBreaker casCircuitBreaker = _circuitBreakers.get(name);
+
+		if (casCircuitBreaker != null) {
+			return casCircuitBreaker;
+		}
+
+		casCircuitBreaker = new CASCircuitBreaker(
+			name, failureThreshold, openTime);
+
+		CASCircuitBreaker previousCASCircuitBreaker =
+			_circuitBreakers.putIfAbsent(name, casCircuitBreaker);
+
+		if (previousCASCircuitBreaker != null) {
+			return previousCASCircuitBreaker;
+		}
+
+		registerMBean(casCircuitBreaker);
+
+		return casCircuitBreaker;
+	}
+
+	public static List<CASCircuitBreaker> getCircuitBreakers() {
+		List<CASCircuitBreaker> casCircuitBreakers =
+			new ArrayList<CASCircuitBreaker>(_circuitBreakers.values());
+
+		return Collections.unmodifiableList(casCircuitBreakers);
+	}
+
+	protected static void registerMBean(CASCircuitBreaker casCircuitBreaker) {
+		try {
+			MBeanServer mBeanServer =
+				ManagementFactory.getPlatformMBeanServer();
+
+			ObjectName objectName = new ObjectName(
+				"com.liferay.portal.security.auth:type=CASCircuitBreaker," +
+					"name=" + ObjectName.quote(casCircuitBreaker.getName()));
+
+			if (!mBeanServer.isRegistered(objectName)) {
+				mBeanServer.registerMBean(casCircuitBreaker, objectName);
+			}
+		}
+		catch (Exception e) {
+			if (_log.isWarnEnabled()) {
+				_log.warn(
+					"Unable to register circuit breaker " +
+						casCircuitBreaker.getName() + " with JMX",
+					e);
+			}
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(
+		CASCircuitBreakerUtil.class);
+
+	private static ConcurrentMap<String, CASCircuitBreaker> _circuitBreakers =
+		new ConcurrentHashMap<String, CASCircuitBreaker>();
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import java.io.Serializable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.jasig.cas.client.validation.Assertion;
+
+/**
+ * Session scoped handle to the cleartext password released by ClearPass. The
+ * password is only fetched the first time it is asked for, and concurrent
+ * requests of the same session wait on that single fetch rather than each
+ * going to the CAS server. A failed fetch is not remembered, so the next
+ * caller tries again.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASClearPassHandle implements Serializable {
+
+	public CASClearPassHandle(String clearPassUrl) {
+		_clearPassUrl = clearPassUrl;
+	}
+
+	public String getPassword(final Assertion assertion) throws Exception {
+		String password = _password;
+
+		if (password != null) {
+			return password;
+		}
+
+		FutureTask<String> futureTask = null;
+		boolean owner = false;
+
+		synchronized (this) {
+			if (_password != null) {
+				return _password;
+			}
+
+			if (_futureTask == null) {
+				_futureTask = new FutureTask<String>(
+					new Callable<String>() {
+
+						public String call() throws Exception {
+							return CASClearPassUtil.fetchPassword(
+								assertion, _clearPassUrl);
+						}
+
+					});
+
+				owner = true;
+			}
+
+			futureTask = _futureTask;
+		}
+
+		if (owner) {
+			futureTask.run();
+		}
+
+		try {
+			password = futureTask.get();
+
+			_password = password;
+
+			return password;
+		}
+		catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+
+			if (cause instanceof Exception) {
+				throw (Exception)cause;
+			}
+
+			throw ee;
+		}
+		finally {
+			synchronized (this) {
+				if (_futureTask == futureTask) {
+					_futureTask = null;
+				}
+			}
+		}
+	}
+
+	public boolean isResolved() {
+		if (_password != null) {
+			return true;
+		}
+
+		return false;
+	}
+
+	private String _clearPassUrl;
+	private transient FutureTask<String> _futureTask;
+	private volatile String _password;
+
+}
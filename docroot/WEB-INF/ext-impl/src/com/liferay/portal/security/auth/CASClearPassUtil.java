@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.util.HttpUtil;
+import com.liferay.portal.kernel.util.Validator;
+import com.liferay.portal.util.PropsValues;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpSession;
+
+import org.jasig.cas.client.validation.Assertion;
+
+/**
+ * Gives portlets and filters access to the cleartext password released by
+ * ClearPass. With <code>cas.clearpass.lazy</code> enabled, the password is
+ * not fetched during auto login but the first time {@link
+ * #getPassword(HttpSession)} is called for the session. Requests to
+ * ClearPass are guarded by the <code>cas.clearPass</code> circuit breaker,
+ * so callers must be prepared for {@link #getPassword(HttpSession)} to fail
+ * fast while the CAS server is unavailable.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASClearPassUtil {
+
+	public static final String CAS_CLEARPASS = "CAS_CLEARPASS";
+
+	public static final String CAS_CLEARPASS_HANDLE = "CAS_CLEARPASS_HANDLE";
+
+	public static String fetchPassword(Assertion assertion, String clearPassUrl)
+		throws IOException {
+
+		CASCircuitBreaker casCircuitBreaker = CASHttpUtil.getCircuitBreaker(
+			"clearPass");
+
+		if ((casCircuitBreaker != null) &&
+			!casCircuitBreaker.allowRequest()) {
+
+			throw new IOException(
+				"Circuit breaker " + casCircuitBreaker.getName() +
+					" is open, not requesting " + clearPassUrl);
+		}
+
+		String proxyTicket = assertion.getPrincipal().getProxyTicketFor(
+			clearPassUrl);
+
+		if (Validator.isNull(proxyTicket)) {
+			throw new IOException(
+				"Unable to get a proxy ticket for " + clearPassUrl);
+		}
+
+		String clearPassRequestUrl =
+			clearPassUrl + "?ticket=" + proxyTicket + "&service=" +
+				HttpUtil.encodeURL(clearPassUrl);
+
+		String[] credentials = null;
+
+		try {
+			credentials = CASHttpUtil.getFirstElementText(
+				clearPassRequestUrl, "credentials");
+
+			if (casCircuitBreaker != null) {
+				casCircuitBreaker.recordSuccess();
+			}
+		}
+		catch (IOException ioe) {
+			if (casCircuitBreaker != null) {
+				casCircuitBreaker.recordFailure();
+			}
+
+			throw ioe;
+		}
+
+		if (credentials == null) {
+			throw new IOException(
+				"ClearPass response from " + clearPassUrl +
+					" did not contain any credentials");
+		}
+
+		return credentials[1];
+	}
+
+	public static CASClearPassHandle getClearPassHandle(
+		HttpSession session, String clearPassUrl) {
+
+		CASClearPassHandle casClearPassHandle =
+			(CASClearPassHandle)session.getAttribute(CAS_CLEARPASS_HANDLE);
+
+		if (casClearPassHandle != null) {
+			return casClearPassHandle;
+		}
+
+		synchronized (getLock(session)) {
+			casClearPassHandle = (CASClearPassHandle)session.getAttribute(
+				CAS_CLEARPASS_HANDLE);
+
+			if (casClearPassHandle == null) {
+				casClearPassHandle = new CASClearPassHandle(clearPassUrl);
+
+				session.setAttribute(CAS_CLEARPASS_HANDLE, casClearPassHandle);
+			}
+		}
+
+		return casClearPassHandle;
+	}
+
+	/**
+	 * Returns the cleartext password of the session's CAS user, fetching it
+	 * from ClearPass if this is the first time it is needed. Returns
+	 * <code>null</code> if ClearPass is not in use for the session.
+	 */
+	public static String getPassword(HttpSession session) throws Exception {
+		CASClearPassHandle casClearPassHandle =
+			(CASClearPassHandle)session.getAttribute(CAS_CLEARPASS_HANDLE);
+
+		if (casClearPassHandle == null) {
+			return (String)session.getAttribute(CAS_CLEARPASS);
+		}
+
+		boolean resolved = casClearPassHandle.isResolved();
+
+		Assertion assertion = (Assertion)session.getAttribute(
+			CAS3AutoLogin.CONST_CAS_ASSERTION);
+
+		String password = casClearPassHandle.getPassword(assertion);
+
+		// Compact sessions keep the password in the handle only
+
+		if (!resolved && !PropsValues.CAS_SESSION_COMPACT_ENABLED) {
+			session.setAttribute(CAS_CLEARPASS, password);
+		}
+
+		return password;
+	}
+
+	protected static Object getLock(HttpSession session) {
+		String id = session.getId();
+
+		return _locks[(id.hashCode() & 0x7fffffff) % _locks.length];
+	}
+
+	private static Object[] _locks = new Object[64];
+
+	static {
+		for (int i = 0; i < _locks.length; i++) {
+			_locks[i] = new Object();
+		}
+	}
+
+}
@@ -0,0 +1,351 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.StringPool;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import java.lang.reflect.Field;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jasig.cas.client.authentication.AttributePrincipal;
+import org.jasig.cas.client.authentication.AttributePrincipalImpl;
+import org.jasig.cas.client.validation.Assertion;
+
+/**
+ * Compact assertion stored in the session in place of the Jasig assertion
+ * when <code>cas.session.compact.enabled</code> is true. It keeps the
+ * principal name, the attributes listed in
+ * <code>cas.session.compact.attributes</code>, the validity dates, and the
+ * proxy granting ticket, and writes them with a hand written
+ * <code>Externalizable</code> format to keep replicated sessions small.
+ * Attribute values are interned since most of them, such as group names,
+ * are shared by many sessions. The interned values are bounded, the oldest
+ * ones are forgotten first.
+ *
+ * <p>
+ * The principal is rebuilt on demand and requests proxy tickets through
+ * {@link CASProxyRetriever}, so proxy tickets and ClearPass keep working on
+ * any node the session is replicated to. The proxy granting ticket is read
+ * from a private field of <code>AttributePrincipalImpl</code>, so loading
+ * this class fails with an error if the CAS client no longer has the field.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASCompactAssertion implements Assertion, Externalizable {
+
+	/**
+	 * Returns a compact copy of the assertion, or the assertion itself if
+	 * its proxy granting ticket cannot be read.
+	 */
+	public static Assertion compact(
+		Assertion assertion, String casServerUrlPrefix,
+		String[] attributeNames) {
+
+		if (assertion instanceof CASCompactAssertion) {
+			return assertion;
+		}
+
+		AttributePrincipal attributePrincipal = assertion.getPrincipal();
+
+		String proxyGrantingTicket = null;
+
+		try {
+			proxyGrantingTicket = getProxyGrantingTicket(attributePrincipal);
+		}
+		catch (Exception e) {
+			_log.error(
+				"Unable to read the proxy granting ticket of " +
+					attributePrincipal.getName() + ", keeping the full " +
+						"assertion",
+				e);
+
+			return assertion;
+		}
+
+		Map<String, Object> attributes = new HashMap<String, Object>();
+
+		Map<?, ?> principalAttributes = attributePrincipal.getAttributes();
+
+		for (String attributeName : attributeNames) {
+			Object value = principalAttributes.get(attributeName);
+
+			if (value != null) {
+				attributes.put(intern(attributeName), intern(value));
+			}
+		}
+
+		return new CASCompactAssertion(
+			attributePrincipal.getName(), attributes, proxyGrantingTicket,
+			intern(casServerUrlPrefix), assertion.getValidFromDate(),
+			assertion.getValidUntilDate());
+	}
+
+	/**
+	 * Used by serialization only.
+	 */
+	public CASCompactAssertion() {
+	}
+
+	protected CASCompactAssertion(
+		String name, Map<String, Object> attributes,
+		String proxyGrantingTicket, String casServerUrlPrefix,
+		Date validFromDate, Date validUntilDate) {
+
+		_name = name;
+		_attributes = attributes;
+		_proxyGrantingTicket = proxyGrantingTicket;
+		_casServerUrlPrefix = casServerUrlPrefix;
+		_validFromTime = toTime(validFromDate);
+		_validUntilTime = toTime(validUntilDate);
+	}
+
+	public Map<String, Object> getAttributes() {
+		return Collections.emptyMap();
+	}
+
+	public AttributePrincipal getPrincipal() {
+		AttributePrincipal attributePrincipal = _attributePrincipal;
+
+		if (attributePrincipal != null) {
+			return attributePrincipal;
+		}
+
+		if (_proxyGrantingTicket == null) {
+			attributePrincipal = new AttributePrincipalImpl(
+				_name, _attributes);
+		}
+		else {
+			attributePrincipal = new AttributePrincipalImpl(
+				_name, _attributes, _proxyGrantingTicket,
+				new CASProxyRetriever(_casServerUrlPrefix));
+		}
+
+		_attributePrincipal = attributePrincipal;
+
+		return attributePrincipal;
+	}
+
+	public Date getValidFromDate() {
+		return toDate(_validFromTime);
+	}
+
+	public Date getValidUntilDate() {
+		return toDate(_validUntilTime);
+	}
+
+	public void readExternal(ObjectInput objectInput) throws IOException {
+		int version = objectInput.readByte();
+
+		if (version != _VERSION) {
+			throw new IOException("Unknown version " + version);
+		}
+
+		_name = objectInput.readUTF();
+		_proxyGrantingTicket = readString(objectInput);
+		_casServerUrlPrefix = intern(readString(objectInput));
+		_validFromTime = objectInput.readLong();
+		_validUntilTime = objectInput.readLong();
+
+		int attributesSize = objectInput.readInt();
+
+		_attributes = new HashMap<String, Object>(attributesSize);
+
+		for (int i = 0; i < attributesSize; i++) {
+			String attributeName = intern(objectInput.readUTF());
+
+			int valuesSize = objectInput.readInt();
+
+			if (valuesSize < 0) {
+				_attributes.put(
+					attributeName, intern(objectInput.readUTF()));
+
+				continue;
+			}
+
+			List<String> values = new ArrayList<String>(valuesSize);
+
+			for (int j = 0; j < valuesSize; j++) {
+				values.add(intern(objectInput.readUTF()));
+			}
+
+			_attributes.put(attributeName, values);
+		}
+	}
+
+	public void writeExternal(ObjectOutput objectOutput) throws IOException {
+		objectOutput.writeByte(_VERSION);
+		objectOutput.writeUTF(_name);
+		writeString(objectOutput, _proxyGrantingTicket);
+		writeString(objectOutput, _casServerUrlPrefix);
+		objectOutput.writeLong(_validFromTime);
+		objectOutput.writeLong(_validUntilTime);
+
+		objectOutput.writeInt(_attributes.size());
+
+		for (Map.Entry<String, Object> entry : _attributes.entrySet()) {
+			objectOutput.writeUTF(entry.getKey());
+
+			Object value = entry.getValue();
+
+			if (value instanceof Collection<?>) {
+				Collection<?> values = (Collection<?>)value;
+
+				objectOutput.writeInt(values.size());
+
+				for (Object curValue : values) {
+					objectOutput.writeUTF(String.valueOf(curValue));
+				}
+			}
+			else {
+				objectOutput.writeInt(-1);
+				objectOutput.writeUTF(String.valueOf(value));
+			}
+		}
+	}
+
+	protected static String getProxyGrantingTicket(
+			AttributePrincipal attributePrincipal)
+		throws Exception {
+
+		return (String)_proxyGrantingTicketField.get(attributePrincipal);
+	}
+
+	protected static Object intern(Object value) {
+		if (value instanceof Collection<?>) {
+			Collection<?> values = (Collection<?>)value;
+
+			List<String> internedValues = new ArrayList<String>(values.size());
+
+			for (Object curValue : values) {
+				internedValues.add(intern(String.valueOf(curValue)));
+			}
+
+			return internedValues;
+		}
+
+		return intern(String.valueOf(value));
+	}
+
+	protected static String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+
+		String internedValue = _internedValues.get(value);
+
+		if (internedValue != null) {
+			return internedValue;
+		}
+
+		// Two threads may both put the value, sessions then simply hold two
+		// equal strings
+
+		_internedValues.put(value, value);
+
+		return value;
+	}
+
+	protected static String readString(ObjectInput objectInput)
+		throws IOException {
+
+		String value = objectInput.readUTF();
+
+		if (value.length() == 0) {
+			return null;
+		}
+
+		return value;
+	}
+
+	protected static Date toDate(long time) {
+		if (time == 0) {
+			return null;
+		}
+
+		return new Date(time);
+	}
+
+	protected static long toTime(Date date) {
+		if (date == null) {
+			return 0;
+		}
+
+		return date.getTime();
+	}
+
+	protected static void writeString(ObjectOutput objectOutput, String value)
+		throws IOException {
+
+		if (value == null) {
+			value = StringPool.BLANK;
+		}
+
+		objectOutput.writeUTF(value);
+	}
+
+	private static final int _INTERNED_VALUES_MAX_SIZE = 10000;
+
+	private static final byte _VERSION = 1;
+
+	private static Log _log = LogFactoryUtil.getLog(CASCompactAssertion.class);
+
+	private static CASBoundedMap<String> _internedValues =
+		new CASBoundedMap<String>(_INTERNED_VALUES_MAX_SIZE);
+	private static Field _proxyGrantingTicketField;
+
+	private transient AttributePrincipal _attributePrincipal;
+	private Map<String, Object> _attributes;
+	private String _casServerUrlPrefix;
+	private String _name;
+	private String _proxyGrantingTicket;
+	private long _validFromTime;
+	private long _validUntilTime;
+
+	static {
+
+		// AttributePrincipalImpl does not expose the ticket it proxies with
+
+		try {
+			_proxyGrantingTicketField =
+				AttributePrincipalImpl.class.getDeclaredField(
+					"proxyGrantingTicket");
+
+			_proxyGrantingTicketField.setAccessible(true);
+		}
+		catch (Exception e) {
+			throw new IllegalStateException(
+				"Unable to access " + AttributePrincipalImpl.class.getName() +
+					".proxyGrantingTicket, disable " +
+						"cas.session.compact.enabled for this CAS client",
+				e);
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Writes the pending CAS membership grants and stops the CAS thread pools
+ * and HTTP connections when the portal shuts down. It must be declared after
+ * <code>PortalContextLoaderListener</code>, so that it runs while the portal
+ * services are still available.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASContextListener implements ServletContextListener {
+
+	public void contextDestroyed(ServletContextEvent servletContextEvent) {
+		CASMembershipSyncUtil.shutdown();
+
+		CASExecutorUtil.shutdown();
+		CASHttpUtil.shutdown();
+		CASValidationExecutorUtil.shutdown();
+	}
+
+	public void contextInitialized(ServletContextEvent servletContextEvent) {
+	}
+
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.dao.db.DB;
+import com.liferay.portal.kernel.dao.db.DBFactoryUtil;
+import com.liferay.portal.kernel.dao.jdbc.DataAccess;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.util.PropsValues;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jasig.cas.client.proxy.ProxyGrantingTicketStorage;
+
+/**
+ * Proxy granting ticket storage kept in the portal database, so that the
+ * CAS proxy callback and the ticket validation waiting for it may be served
+ * by different cluster nodes without sticky sessions. Set the
+ * <code>proxyGrantingTicketStorageClass</code> init parameter of the CAS
+ * validation filter to this class to use it.
+ *
+ * <p>
+ * Tickets are removed when they are retrieved, like the stock Jasig storage
+ * does, and expire after <code>cas.proxy.granting.ticket.time.to.live</code>
+ * seconds. Expired tickets are deleted with a single statement at most once
+ * every <code>cas.proxy.granting.ticket.clean.up.interval</code> seconds per
+ * node. The table is created the first time the storage is used.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASDBProxyGrantingTicketStorage
+	implements ProxyGrantingTicketStorage {
+
+	public CASDBProxyGrantingTicketStorage() {
+		this(
+			PropsValues.CAS_PROXY_GRANTING_TICKET_TIME_TO_LIVE * Time.SECOND,
+			PropsValues.CAS_PROXY_GRANTING_TICKET_CLEAN_UP_INTERVAL *
+				Time.SECOND);
+	}
+
+	/**
+	 * Creates a storage whose tickets expire after <code>timeToLive</code>
+	 * milliseconds. Expired tickets are deleted in the background at most
+	 * once every <code>cleanUpInterval</code> milliseconds, or only when
+	 * {@link #cleanUp()} is called if it is 0.
+	 */
+	public CASDBProxyGrantingTicketStorage(
+		long timeToLive, long cleanUpInterval) {
+
+		_timeToLive = timeToLive;
+		_cleanUpInterval = cleanUpInterval;
+	}
+
+	public void cleanUp() {
+		Connection con = null;
+		PreparedStatement ps = null;
+
+		try {
+			con = getConnection();
+
+			ps = con.prepareStatement(_SQL_DELETE_EXPIRED);
+
+			ps.setLong(1, System.currentTimeMillis());
+
+			int count = ps.executeUpdate();
+
+			if (_log.isDebugEnabled()) {
+				_log.debug(
+					"Deleted " + count + " expired proxy granting tickets");
+			}
+		}
+		catch (Exception e) {
+			_log.error("Unable to delete expired proxy granting tickets", e);
+		}
+		finally {
+			DataAccess.cleanUp(con, ps);
+		}
+	}
+
+	public String retrieve(String proxyGrantingTicketIou) {
+		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+
+		try {
+			con = getConnection();
+
+			ps = con.prepareStatement(_SQL_SELECT);
+
+			ps.setString(1, proxyGrantingTicketIou);
+
+			rs = ps.executeQuery();
+
+			if (!rs.next()) {
+				if (_log.isDebugEnabled()) {
+					_log.debug(
+						"No proxy granting ticket found for " +
+							proxyGrantingTicketIou);
+				}
+
+				return null;
+			}
+
+			String proxyGrantingTicket = rs.getString(1);
+			long expirationTime = rs.getLong(2);
+
+			DataAccess.cleanUp(null, ps, rs);
+
+			rs = null;
+
+			ps = con.prepareStatement(_SQL_DELETE);
+
+			ps.setString(1, proxyGrantingTicketIou);
+
+			// Only the node that deletes the ticket gets it, so a ticket is
+			// never handed out twice
+
+			if (ps.executeUpdate() == 0) {
+				return null;
+			}
+
+			if (expirationTime <= System.currentTimeMillis()) {
+				return null;
+			}
+
+			return proxyGrantingTicket;
+		}
+		catch (Exception e) {
+			_log.error(
+				"Unable to retrieve proxy granting ticket for " +
+					proxyGrantingTicketIou,
+				e);
+
+			return null;
+		}
+		finally {
+			DataAccess.cleanUp(con, ps, rs);
+		}
+	}
+
+	public void save(
+		String proxyGrantingTicketIou, String proxyGrantingTicket) {
+
+		Connection con = null;
+		PreparedStatement ps = null;
+
+		try {
+			con = getConnection();
+
+			ps = con.prepareStatement(_SQL_INSERT);
+
+			ps.setString(1, proxyGrantingTicketIou);
+			ps.setString(2, proxyGrantingTicket);
+			ps.setLong(3, System.currentTimeMillis() + _timeToLive);
+
+			ps.executeUpdate();
+		}
+		catch (Exception e) {
+			_log.error(
+				"Unable to save proxy granting ticket for " +
+					proxyGrantingTicketIou,
+				e);
+		}
+		finally {
+			DataAccess.cleanUp(con, ps);
+		}
+
+		scheduleCleanUp();
+	}
+
+	protected Connection getConnection() throws Exception {
+		if (!_tableCreated) {
+			synchronized (this) {
+				if (!_tableCreated) {
+					DB db = DBFactoryUtil.getDB();
+
+					// Fails quietly if the table was already created by this
+					// or another node
+
+					db.runSQLTemplateString(_SQL_CREATE_TABLE, false, false);
+					db.runSQLTemplateString(_SQL_CREATE_INDEX, false, false);
+
+					_tableCreated = true;
+				}
+			}
+		}
+
+		return DataAccess.getConnection();
+	}
+
+	protected void scheduleCleanUp() {
+		if (_cleanUpInterval <= 0) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+
+		long lastCleanUpTime = _lastCleanUpTime.get();
+
+		if ((now - lastCleanUpTime) < _cleanUpInterval) {
+			return;
+		}
+
+		if (!_lastCleanUpTime.compareAndSet(lastCleanUpTime, now)) {
+			return;
+		}
+
+		CASExecutorUtil.execute(
+			new Runnable() {
+
+				public void run() {
+					cleanUp();
+				}
+
+			});
+	}
+
+	private static final String _SQL_CREATE_INDEX =
+		"create index IX_CASPGT_EXPIRATIONTIME on CAS_ProxyGrantingTicket " +
+			"(expirationTime);";
+
+	private static final String _SQL_CREATE_TABLE =
+		"create table CAS_ProxyGrantingTicket (proxyGrantingTicketIou " +
+			"VARCHAR(255) not null primary key, proxyGrantingTicket " +
+				"VARCHAR(255) null, expirationTime LONG);";
+
+	private static final String _SQL_DELETE =
+		"delete from CAS_ProxyGrantingTicket where proxyGrantingTicketIou = ?";
+
+	private static final String _SQL_DELETE_EXPIRED =
+		"delete from CAS_ProxyGrantingTicket where expirationTime <= ?";
+
+	private static final String _SQL_INSERT =
+		"insert into CAS_ProxyGrantingTicket (proxyGrantingTicketIou, " +
+			"proxyGrantingTicket, expirationTime) values (?, ?, ?)";
+
+	private static final String _SQL_SELECT =
+		"select proxyGrantingTicket, expirationTime from " +
+			"CAS_ProxyGrantingTicket where proxyGrantingTicketIou = ?";
+
+	private static Log _log = LogFactoryUtil.getLog(
+		CASDBProxyGrantingTicketStorage.class);
+
+	private long _cleanUpInterval;
+	private AtomicLong _lastCleanUpTime = new AtomicLong();
+	private volatile boolean _tableCreated;
+	private long _timeToLive;
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.util.PropsValues;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small bounded pool of daemon threads used by the CAS login path for work
+ * that must not hold up the request thread, such as refreshing cached
+ * entries ahead of their expiration.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASExecutorUtil {
+
+	public static boolean execute(Runnable runnable) {
+		try {
+			_threadPoolExecutor.execute(runnable);
+
+			return true;
+		}
+		catch (RejectedExecutionException ree) {
+			if (_log.isDebugEnabled()) {
+				_log.debug("CAS executor queue is full, rejecting task");
+			}
+
+			return false;
+		}
+	}
+
+	public static void shutdown() {
+		_threadPoolExecutor.shutdownNow();
+	}
+
+	public static <T> Future<T> submit(Callable<T> callable) {
+		return _threadPoolExecutor.submit(callable);
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(CASExecutorUtil.class);
+
+	private static ThreadPoolExecutor _threadPoolExecutor;
+
+	static {
+		int poolSize = Math.max(1, PropsValues.CAS_EXECUTOR_POOL_SIZE);
+		int queueSize = Math.max(1, PropsValues.CAS_EXECUTOR_QUEUE_SIZE);
+
+		_threadPoolExecutor = new ThreadPoolExecutor(
+			poolSize, poolSize, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(queueSize),
+			new ThreadFactory() {
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(
+						runnable,
+						"CAS Executor " + _threadNumber.incrementAndGet());
+
+					thread.setDaemon(true);
+
+					return thread;
+				}
+
+				private AtomicInteger _threadNumber = new AtomicInteger();
+
+			});
+
+		_threadPoolExecutor.allowCoreThreadTimeOut(true);
+	}
+
+}
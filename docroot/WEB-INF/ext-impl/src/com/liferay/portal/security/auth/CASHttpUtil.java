@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.util.PropsValues;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+/**
+ * Shared HTTP client for the back channel calls made to the CAS server, such
+ * as ClearPass and proxy ticket requests. Connections are pooled and kept
+ * alive per host, so consecutive calls reuse an established TLS connection
+ * instead of paying for a new handshake each time. Each call is limited to
+ * what is left of the calling thread's {@link CASTimeBudgetUtil} budget.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASHttpUtil {
+
+	/**
+	 * Returns the circuit breaker guarding the given CAS server endpoint, such
+	 * as <code>clearPass</code> or <code>proxy</code>, or <code>null</code> if
+	 * back channel circuit breakers are disabled.
+	 */
+	public static CASCircuitBreaker getCircuitBreaker(String endpoint) {
+		if (!PropsValues.CAS_BACK_CHANNEL_CIRCUIT_BREAKER_ENABLED) {
+			return null;
+		}
+
+		return CASCircuitBreakerUtil.getCircuitBreaker(
+			"cas." + endpoint,
+			PropsValues.CAS_BACK_CHANNEL_CIRCUIT_BREAKER_FAILURE_THRESHOLD,
+			PropsValues.CAS_BACK_CHANNEL_CIRCUIT_BREAKER_OPEN_TIME *
+				Time.SECOND);
+	}
+
+	/**
+	 * Requests the URL and returns the local name, text and code of the first
+	 * element of the response matching one of the given local names. The
+	 * response is parsed while it is read, see {@link CASResponseParser}.
+	 */
+	public static String[] getFirstElementText(
+			String url, String... localNames)
+		throws IOException {
+
+		GetMethod getMethod = new GetMethod(url);
+
+		try {
+			executeMethod(getMethod);
+
+			return CASResponseParser.getFirstElementText(
+				getMethod.getResponseBodyAsStream(), localNames);
+		}
+		catch (XMLStreamException xmlse) {
+			throw new IOException(
+				"Unable to parse response from " +
+					getMethod.getURI().getEscapedURIPathQuery() + ": " +
+						xmlse.getMessage());
+		}
+		finally {
+			getMethod.releaseConnection();
+		}
+	}
+
+	public static void shutdown() {
+		_connectionManager.shutdown();
+	}
+
+	protected static void executeMethod(GetMethod getMethod)
+		throws IOException {
+
+		long remaining = CASTimeBudgetUtil.getRemaining();
+
+		if (remaining <= 0) {
+			throw new IOException(
+				"Time budget exhausted before requesting " +
+					getMethod.getURI().getEscapedURIPath());
+		}
+
+		if (remaining < PropsValues.CAS_HTTP_SO_TIMEOUT) {
+			getMethod.getParams().setSoTimeout((int)remaining);
+		}
+
+		int statusCode = _httpClient.executeMethod(getMethod);
+
+		if (statusCode != HttpStatus.SC_OK) {
+			throw new IOException(
+				"Unexpected response status " + statusCode + " from " +
+					getMethod.getURI().getEscapedURIPathQuery());
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(CASHttpUtil.class);
+
+	private static MultiThreadedHttpConnectionManager _connectionManager;
+	private static HttpClient _httpClient;
+
+	static {
+		_connectionManager = new MultiThreadedHttpConnectionManager();
+
+		HttpConnectionManagerParams httpConnectionManagerParams =
+			_connectionManager.getParams();
+
+		httpConnectionManagerParams.setConnectionTimeout(
+			PropsValues.CAS_HTTP_CONNECTION_TIMEOUT);
+		httpConnectionManagerParams.setDefaultMaxConnectionsPerHost(
+			PropsValues.CAS_HTTP_MAX_CONNECTIONS_PER_HOST);
+		httpConnectionManagerParams.setMaxTotalConnections(
+			PropsValues.CAS_HTTP_MAX_TOTAL_CONNECTIONS);
+		httpConnectionManagerParams.setSoTimeout(
+			PropsValues.CAS_HTTP_SO_TIMEOUT);
+		httpConnectionManagerParams.setStaleCheckingEnabled(true);
+
+		_httpClient = new HttpClient(_connectionManager);
+
+		_httpClient.getParams().setConnectionManagerTimeout(
+			PropsValues.CAS_HTTP_CONNECTION_TIMEOUT);
+
+		if (_log.isDebugEnabled()) {
+			_log.debug(
+				"Pooling up to " +
+					PropsValues.CAS_HTTP_MAX_CONNECTIONS_PER_HOST +
+						" connections per CAS host");
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.util.StringPool;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.util.PropsValues;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers CAS principals that were not found in any LDAP server so that
+ * they skip LDAP entirely for <code>cas.ldap.negative.cache.time.to.live</code>
+ * seconds. Administrators can purge the cache from the script console in the
+ * Control Panel by calling {@link #purge()}. A company's entries are also
+ * purged when its portal preferences are saved.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASLDAPNegativeCacheUtil {
+
+	public static boolean contains(long companyId, String login) {
+		if (!PropsValues.CAS_LDAP_NEGATIVE_CACHE_ENABLED) {
+			return false;
+		}
+
+		String key = getKey(companyId, login);
+
+		Long expirationTime = _entries.get(key);
+
+		if (expirationTime == null) {
+			return false;
+		}
+
+		if (expirationTime.longValue() <= System.currentTimeMillis()) {
+			_entries.remove(key, expirationTime);
+
+			return false;
+		}
+
+		_hitCount.incrementAndGet();
+
+		return true;
+	}
+
+	public static long getHitCount() {
+		return _hitCount.get();
+	}
+
+	public static int getSize() {
+		return _entries.size();
+	}
+
+	public static void purge() {
+		_entries.clear();
+	}
+
+	public static void purge(long companyId) {
+		String prefix = companyId + StringPool.POUND;
+
+		Iterator<String> itr = _entries.keySet().iterator();
+
+		while (itr.hasNext()) {
+			String key = itr.next();
+
+			if (key.startsWith(prefix)) {
+				itr.remove();
+			}
+		}
+	}
+
+	public static void put(long companyId, String login) {
+		if (!PropsValues.CAS_LDAP_NEGATIVE_CACHE_ENABLED) {
+			return;
+		}
+
+		_entries.put(
+			getKey(companyId, login),
+			System.currentTimeMillis() +
+				(PropsValues.CAS_LDAP_NEGATIVE_CACHE_TIME_TO_LIVE *
+					Time.SECOND));
+	}
+
+	public static void remove(long companyId, String login) {
+		_entries.remove(getKey(companyId, login));
+	}
+
+	protected static String getKey(long companyId, String login) {
+		return companyId + StringPool.POUND + login.toLowerCase();
+	}
+
+	private static CASBoundedMap<Long> _entries = new CASBoundedMap<Long>(
+		PropsValues.CAS_LDAP_NEGATIVE_CACHE_MAX_SIZE);
+	private static AtomicLong _hitCount = new AtomicLong();
+
+}
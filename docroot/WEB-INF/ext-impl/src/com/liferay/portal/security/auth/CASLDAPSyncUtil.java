@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.util.Base64;
+import com.liferay.portal.kernel.util.StringPool;
+import com.liferay.portal.util.PropsValues;
+
+import java.security.MessageDigest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+/**
+ * Remembers when each CAS principal was last imported from LDAP, so that the
+ * auto login hook can skip the import for users that were synced recently,
+ * and a digest of the LDAP attributes it was imported from, so that imports
+ * that would not change anything can be skipped.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASLDAPSyncUtil {
+
+	public static void endRefresh(long companyId, String login) {
+		_refreshing.remove(getKey(companyId, login));
+	}
+
+	public static long getAppliedImportCount() {
+		return _appliedImportCount.get();
+	}
+
+	public static String getDigest(long companyId, String login) {
+		return _digests.get(getKey(companyId, login));
+	}
+
+	/**
+	 * Returns a digest of the attributes an LDAP server returned for a user.
+	 * Attribute ids and values are sorted first, so the digest does not depend
+	 * on the order in which the server returns them.
+	 */
+	public static String getDigest(long ldapServerId, Attributes attributes)
+		throws Exception {
+
+		MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+
+		messageDigest.update(String.valueOf(ldapServerId).getBytes());
+
+		Map<String, Attribute> sortedAttributes =
+			new TreeMap<String, Attribute>();
+
+		NamingEnumeration<? extends Attribute> enu = attributes.getAll();
+
+		while (enu.hasMore()) {
+			Attribute attribute = enu.next();
+
+			sortedAttributes.put(
+				attribute.getID().toLowerCase(), attribute);
+		}
+
+		for (Map.Entry<String, Attribute> entry :
+				sortedAttributes.entrySet()) {
+
+			messageDigest.update(_SEPARATOR);
+			messageDigest.update(entry.getKey().getBytes(StringPool.UTF8));
+
+			List<byte[]> values = new ArrayList<byte[]>();
+
+			NamingEnumeration<?> valuesEnu = entry.getValue().getAll();
+
+			while (valuesEnu.hasMore()) {
+				Object value = valuesEnu.next();
+
+				if (value instanceof byte[]) {
+					values.add((byte[])value);
+				}
+				else {
+					values.add(
+						String.valueOf(value).getBytes(StringPool.UTF8));
+				}
+			}
+
+			Collections.sort(values, _byteArrayComparator);
+
+			for (byte[] value : values) {
+				messageDigest.update(_SEPARATOR);
+				messageDigest.update(value);
+			}
+		}
+
+		return Base64.encode(messageDigest.digest());
+	}
+
+	public static long getSkippedImportCount() {
+		return _skippedImportCount.get();
+	}
+
+	public static void incrementAppliedImportCount() {
+		_appliedImportCount.incrementAndGet();
+	}
+
+	public static void incrementSkippedImportCount() {
+		_skippedImportCount.incrementAndGet();
+	}
+
+	public static boolean isSynced(
+		long companyId, String login, long syncInterval) {
+
+		Long syncTime = _syncTimes.get(getKey(companyId, login));
+
+		if ((syncTime != null) &&
+			((syncTime.longValue() + syncInterval) >
+				System.currentTimeMillis())) {
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Records that the principal was imported from LDAP now. How long that
+	 * import counts as recent is up to the caller of {@link #isSynced(long,
+	 * String, long)}, so a changed sync interval applies to earlier imports
+	 * as well.
+	 */
+	public static void markSynced(long companyId, String login) {
+		_syncTimes.put(getKey(companyId, login), System.currentTimeMillis());
+	}
+
+	public static void remove(long companyId, String login) {
+		String key = getKey(companyId, login);
+
+		_digests.remove(key);
+		_syncTimes.remove(key);
+	}
+
+	public static void reset() {
+		_digests.clear();
+		_syncTimes.clear();
+	}
+
+	public static void setDigest(long companyId, String login, String digest) {
+		_digests.put(getKey(companyId, login), digest);
+	}
+
+	/**
+	 * Returns <code>true</code> if the caller should refresh the principal and
+	 * no other refresh of it is in progress. Callers must call {@link
+	 * #endRefresh(long, String)} once done.
+	 */
+	public static boolean startRefresh(long companyId, String login) {
+		if (_refreshing.putIfAbsent(
+				getKey(companyId, login), Boolean.TRUE) == null) {
+
+			return true;
+		}
+
+		return false;
+	}
+
+	protected static String getKey(long companyId, String login) {
+		return companyId + StringPool.POUND + login.toLowerCase();
+	}
+
+	private static final byte[] _SEPARATOR = {0};
+
+	private static AtomicLong _appliedImportCount = new AtomicLong();
+	private static Comparator<byte[]> _byteArrayComparator =
+		new Comparator<byte[]>() {
+
+			public int compare(byte[] bytes1, byte[] bytes2) {
+				int length = Math.min(bytes1.length, bytes2.length);
+
+				for (int i = 0; i < length; i++) {
+					if (bytes1[i] != bytes2[i]) {
+						return bytes1[i] - bytes2[i];
+					}
+				}
+
+				return bytes1.length - bytes2.length;
+			}
+
+		};
+	private static CASBoundedMap<String> _digests = new CASBoundedMap<String>(
+		PropsValues.CAS_LDAP_SYNC_MAX_SIZE);
+	private static ConcurrentMap<String, Boolean> _refreshing =
+		new ConcurrentHashMap<String, Boolean>();
+	private static AtomicLong _skippedImportCount = new AtomicLong();
+	private static CASBoundedMap<Long> _syncTimes = new CASBoundedMap<Long>(
+		PropsValues.CAS_LDAP_SYNC_MAX_SIZE);
+
+}
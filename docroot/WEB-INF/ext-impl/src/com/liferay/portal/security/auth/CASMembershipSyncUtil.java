@@ -0,0 +1,465 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.NoSuchRoleException;
+import com.liferay.portal.NoSuchUserGroupException;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.StringPool;
+import com.liferay.portal.kernel.util.Validator;
+import com.liferay.portal.model.Role;
+import com.liferay.portal.model.User;
+import com.liferay.portal.model.UserGroup;
+import com.liferay.portal.service.RoleLocalServiceUtil;
+import com.liferay.portal.service.UserGroupLocalServiceUtil;
+import com.liferay.portal.service.UserLocalServiceUtil;
+import com.liferay.portal.util.PropsValues;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jasig.cas.client.validation.Assertion;
+
+/**
+ * Synchronizes the user groups and roles of a CAS user with the memberships
+ * released in the <code>cas.membership.attribute</code> attribute. Values
+ * may be plain names or distinguished names, whose first RDN value is used as
+ * the name. Names are matched case sensitively, for user groups and roles
+ * alike.
+ *
+ * <p>
+ * The user is added to the asserted user groups that exist, and removed only
+ * from the user groups listed in <code>cas.membership.user.group.names</code>
+ * that are not asserted. Only the roles listed in
+ * <code>cas.membership.role.names</code> are granted or revoked, all other
+ * user groups and roles are left alone. Nothing is changed if the assertion
+ * does not have the attribute. Only the difference with the current
+ * memberships is written.
+ * </p>
+ *
+ * <p>
+ * Revocations are written right away, before the user is logged in, so that
+ * a user never keeps a membership CAS no longer asserts. Grants of all users
+ * are merged per user group and role, and written from {@link
+ * CASExecutorUtil} with one call per user group or role, which also limits
+ * the permission cache flushes and reindexing they cause. Grants that cannot
+ * be written are applied again at the user's next login, since the difference
+ * is computed again, and the user is no longer considered synced with LDAP.
+ * Pending grants are written by {@link #shutdown()}, which {@link
+ * CASContextListener} calls when the portal shuts down.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASMembershipSyncUtil {
+
+	public static long getFailedGrantCount() {
+		return _failedGrantCount.get();
+	}
+
+	public static void shutdown() {
+		flush();
+	}
+
+	public static void syncMemberships(
+			long companyId, long userId, Assertion assertion)
+		throws Exception {
+
+		Set<String> names = getAssertedNames(assertion);
+
+		// A missing attribute says nothing about the memberships, it is not
+		// an empty list of them
+
+		if (names == null) {
+			if (_log.isDebugEnabled()) {
+				_log.debug(
+					"Not synchronizing the memberships of user " + userId +
+						" because the assertion has no " +
+							PropsValues.CAS_MEMBERSHIP_ATTRIBUTE +
+								" attribute");
+			}
+
+			return;
+		}
+
+		Set<Long> assertedUserGroupIds = new HashSet<Long>();
+
+		for (String name : names) {
+			try {
+				UserGroup userGroup = UserGroupLocalServiceUtil.getUserGroup(
+					companyId, name);
+
+				// The lookup follows the collation of the database
+
+				if (userGroup.getName().equals(name)) {
+					assertedUserGroupIds.add(userGroup.getUserGroupId());
+				}
+			}
+			catch (NoSuchUserGroupException nsuge) {
+			}
+		}
+
+		// Only user groups listed in cas.membership.user.group.names are
+		// removed, user groups assigned by other means are kept
+
+		Set<Long> userGroupIds = new HashSet<Long>();
+
+		for (UserGroup userGroup :
+				UserGroupLocalServiceUtil.getUserUserGroups(userId)) {
+
+			if (assertedUserGroupIds.contains(userGroup.getUserGroupId()) ||
+				_managedUserGroupNames.contains(userGroup.getName())) {
+
+				userGroupIds.add(userGroup.getUserGroupId());
+			}
+		}
+
+		Map<Long, Boolean> userGroupChanges = getChanges(
+			userGroupIds, assertedUserGroupIds);
+
+		Set<Long> roleIds = new HashSet<Long>();
+		Set<Long> assertedRoleIds = new HashSet<Long>();
+
+		for (String roleName : PropsValues.CAS_MEMBERSHIP_ROLE_NAMES) {
+			Role role = null;
+
+			try {
+				role = RoleLocalServiceUtil.getRole(companyId, roleName);
+			}
+			catch (NoSuchRoleException nsre) {
+				continue;
+			}
+
+			if (RoleLocalServiceUtil.hasUserRole(userId, role.getRoleId())) {
+				roleIds.add(role.getRoleId());
+			}
+
+			if (names.contains(roleName)) {
+				assertedRoleIds.add(role.getRoleId());
+			}
+		}
+
+		Map<Long, Boolean> roleChanges = getChanges(roleIds, assertedRoleIds);
+
+		if (userGroupChanges.isEmpty() && roleChanges.isEmpty()) {
+			return;
+		}
+
+		if (_log.isDebugEnabled()) {
+			_log.debug(
+				"Synchronizing " + userGroupChanges.size() +
+					" user group and " + roleChanges.size() +
+						" role memberships of user " + userId);
+		}
+
+		long[] userIds = {userId};
+
+		boolean flush = false;
+
+		synchronized (_lock) {
+
+			// A grant still pending from an earlier login must not undo a
+			// revocation
+
+			addGrants(_userGroupGrants, userId, userGroupChanges);
+			addGrants(_roleGrants, userId, roleChanges);
+
+			if (!_flushScheduled &&
+				(!_userGroupGrants.isEmpty() || !_roleGrants.isEmpty())) {
+
+				_flushScheduled = true;
+
+				flush = true;
+			}
+		}
+
+		for (Map.Entry<Long, Boolean> entry : userGroupChanges.entrySet()) {
+			if (!entry.getValue().booleanValue()) {
+				UserLocalServiceUtil.unsetUserGroupUsers(
+					entry.getKey(), userIds);
+			}
+		}
+
+		for (Map.Entry<Long, Boolean> entry : roleChanges.entrySet()) {
+			if (!entry.getValue().booleanValue()) {
+				UserLocalServiceUtil.unsetRoleUsers(entry.getKey(), userIds);
+			}
+		}
+
+		if (flush && !CASExecutorUtil.execute(_flushRunnable)) {
+			flush();
+		}
+	}
+
+	/**
+	 * Queues the grants among the changes and drops pending grants of the
+	 * user that the changes revoke.
+	 */
+	protected static void addGrants(
+		Map<Long, Set<Long>> pendingGrants, long userId,
+		Map<Long, Boolean> changes) {
+
+		for (Map.Entry<Long, Boolean> entry : changes.entrySet()) {
+			Set<Long> userIds = pendingGrants.get(entry.getKey());
+
+			if (entry.getValue().booleanValue()) {
+				if (userIds == null) {
+					userIds = new HashSet<Long>();
+
+					pendingGrants.put(entry.getKey(), userIds);
+				}
+
+				userIds.add(userId);
+			}
+			else if (userIds != null) {
+				userIds.remove(userId);
+
+				if (userIds.isEmpty()) {
+					pendingGrants.remove(entry.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes all pending grants, including those queued while writing, and
+	 * returns once there are none left.
+	 */
+	protected static void flush() {
+		while (true) {
+			Map<Long, Set<Long>> userGroupGrants = null;
+			Map<Long, Set<Long>> roleGrants = null;
+
+			synchronized (_lock) {
+				if (_userGroupGrants.isEmpty() && _roleGrants.isEmpty()) {
+					_flushScheduled = false;
+
+					return;
+				}
+
+				userGroupGrants = _userGroupGrants;
+				roleGrants = _roleGrants;
+
+				_userGroupGrants = new HashMap<Long, Set<Long>>();
+				_roleGrants = new HashMap<Long, Set<Long>>();
+			}
+
+			for (Map.Entry<Long, Set<Long>> entry :
+					userGroupGrants.entrySet()) {
+
+				long userGroupId = entry.getKey();
+
+				try {
+					UserLocalServiceUtil.addUserGroupUsers(
+						userGroupId, getUserIds(entry.getValue()));
+				}
+				catch (Exception e) {
+					_log.error(
+						"Unable to add users to user group " + userGroupId +
+							", adding them one by one",
+						e);
+
+					for (long userId : entry.getValue()) {
+						try {
+							UserLocalServiceUtil.addUserGroupUsers(
+								userGroupId, new long[] {userId});
+						}
+						catch (Exception e2) {
+							handleFailedGrant(userId, e2);
+						}
+					}
+				}
+			}
+
+			for (Map.Entry<Long, Set<Long>> entry : roleGrants.entrySet()) {
+				long roleId = entry.getKey();
+
+				try {
+					UserLocalServiceUtil.addRoleUsers(
+						roleId, getUserIds(entry.getValue()));
+				}
+				catch (Exception e) {
+					_log.error(
+						"Unable to add users to role " + roleId +
+							", adding them one by one",
+						e);
+
+					for (long userId : entry.getValue()) {
+						try {
+							UserLocalServiceUtil.addRoleUsers(
+								roleId, new long[] {userId});
+						}
+						catch (Exception e2) {
+							handleFailedGrant(userId, e2);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the names asserted in the membership attribute, or
+	 * <code>null</code> if the assertion does not have the attribute.
+	 */
+	protected static Set<String> getAssertedNames(Assertion assertion) {
+		Object value = assertion.getPrincipal().getAttributes().get(
+			PropsValues.CAS_MEMBERSHIP_ATTRIBUTE);
+
+		if (value == null) {
+			return null;
+		}
+
+		Set<String> names = new HashSet<String>();
+
+		Collection<?> values = null;
+
+		if (value instanceof Collection<?>) {
+			values = (Collection<?>)value;
+		}
+		else {
+			List<Object> list = new ArrayList<Object>(1);
+
+			list.add(value);
+
+			values = list;
+		}
+
+		for (Object curValue : values) {
+			String name = getName(String.valueOf(curValue));
+
+			if (Validator.isNotNull(name)) {
+				names.add(name);
+			}
+		}
+
+		return names;
+	}
+
+	/**
+	 * Returns the memberships to add, mapped to <code>true</code>, and to
+	 * remove, mapped to <code>false</code>.
+	 */
+	protected static Map<Long, Boolean> getChanges(
+		Set<Long> currentIds, Set<Long> assertedIds) {
+
+		Map<Long, Boolean> changes = new HashMap<Long, Boolean>();
+
+		for (Long assertedId : assertedIds) {
+			if (!currentIds.contains(assertedId)) {
+				changes.put(assertedId, Boolean.TRUE);
+			}
+		}
+
+		for (Long currentId : currentIds) {
+			if (!assertedIds.contains(currentId)) {
+				changes.put(currentId, Boolean.FALSE);
+			}
+		}
+
+		return changes;
+	}
+
+	/**
+	 * Returns the value of the first RDN if the value is a distinguished
+	 * name, such as <code>cn=Staff,ou=Groups,dc=example,dc=org</code>, and
+	 * the value itself otherwise.
+	 */
+	protected static String getName(String value) {
+		int equalPos = value.indexOf(StringPool.EQUAL);
+		int commaPos = value.indexOf(StringPool.COMMA);
+
+		if ((equalPos <= 0) || ((commaPos >= 0) && (commaPos < equalPos))) {
+			return value.trim();
+		}
+
+		if (commaPos < 0) {
+			commaPos = value.length();
+		}
+
+		return value.substring(equalPos + 1, commaPos).trim();
+	}
+
+	protected static long[] getUserIds(Set<Long> userIds) {
+		long[] userIdsArray = new long[userIds.size()];
+
+		int i = 0;
+
+		for (Long userId : userIds) {
+			userIdsArray[i++] = userId;
+		}
+
+		return userIdsArray;
+	}
+
+	/**
+	 * Logs a grant that could not be written and forgets when the user was
+	 * last synced with LDAP, so that the user is refreshed at the next login
+	 * as well.
+	 */
+	protected static void handleFailedGrant(long userId, Exception e) {
+		_failedGrantCount.incrementAndGet();
+
+		_log.error("Unable to grant a membership to user " + userId, e);
+
+		try {
+			User user = UserLocalServiceUtil.getUser(userId);
+
+			CASSettings casSettings = CASSettingsUtil.getSettings(
+				user.getCompanyId());
+
+			if (casSettings.isAuthTypeScreenName()) {
+				CASLDAPSyncUtil.remove(
+					user.getCompanyId(), user.getScreenName());
+			}
+			else {
+				CASLDAPSyncUtil.remove(
+					user.getCompanyId(), user.getEmailAddress());
+			}
+		}
+		catch (Exception e2) {
+			_log.error("Unable to reset the LDAP sync of user " + userId, e2);
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(
+		CASMembershipSyncUtil.class);
+
+	private static AtomicLong _failedGrantCount = new AtomicLong();
+	private static boolean _flushScheduled;
+	private static Runnable _flushRunnable = new Runnable() {
+
+		public void run() {
+			flush();
+		}
+
+	};
+	private static Object _lock = new Object();
+	private static Set<String> _managedUserGroupNames = new HashSet<String>(
+		Arrays.asList(PropsValues.CAS_MEMBERSHIP_USER_GROUP_NAMES));
+	private static Map<Long, Set<Long>> _roleGrants =
+		new HashMap<Long, Set<Long>>();
+	private static Map<Long, Set<Long>> _userGroupGrants =
+		new HashMap<Long, Set<Long>>();
+
+}
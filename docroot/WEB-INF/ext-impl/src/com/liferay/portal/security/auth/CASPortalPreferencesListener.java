@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.ModelListenerException;
+import com.liferay.portal.model.BaseModelListener;
+import com.liferay.portal.model.PortalPreferences;
+import com.liferay.portal.util.PortletKeys;
+
+/**
+ * Resets the cached CAS settings on every cluster node whenever the
+ * company-level portal preferences are saved from the Control Panel. See
+ * {@link CASSettingsUtil}.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASPortalPreferencesListener
+	extends BaseModelListener<PortalPreferences> {
+
+	public void onAfterCreate(PortalPreferences portalPreferences)
+		throws ModelListenerException {
+
+		resetSettings(portalPreferences);
+	}
+
+	public void onAfterRemove(PortalPreferences portalPreferences)
+		throws ModelListenerException {
+
+		resetSettings(portalPreferences);
+	}
+
+	public void onAfterUpdate(PortalPreferences portalPreferences)
+		throws ModelListenerException {
+
+		resetSettings(portalPreferences);
+	}
+
+	protected void resetSettings(PortalPreferences portalPreferences) {
+		if (portalPreferences.getOwnerType() !=
+				PortletKeys.PREFS_OWNER_TYPE_COMPANY) {
+
+			return;
+		}
+
+		long companyId = portalPreferences.getOwnerId();
+
+		CASSettingsUtil.reset(companyId);
+	}
+
+}
@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.util.PropsValues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jasig.cas.client.proxy.ProxyGrantingTicketStorage;
+
+/**
+ * In memory proxy granting ticket storage used by the CAS validation filter
+ * by default. Unlike the stock Jasig storage, it does not synchronize on a
+ * shared map or scan the whole map to expire tickets.
+ *
+ * <p>
+ * Tickets are kept in a concurrent map and their keys in a timing wheel with
+ * one slot per second of <code>cas.proxy.granting.ticket.time.to.live</code>.
+ * Every ticket lives equally long, so a single wheel is enough and a ticket
+ * always lands in the slot that is due when it expires. The wheel is advanced
+ * by whichever caller first notices that a second has passed, which only
+ * drains the slots that became due, without any timer thread. The storage
+ * holds at most <code>cas.proxy.granting.ticket.max.size</code> tickets and
+ * evicts the ticket closest to expiring to make room for a new one.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASProxyGrantingTicketStorage
+	implements ProxyGrantingTicketStorage {
+
+	public CASProxyGrantingTicketStorage() {
+		this(
+			PropsValues.CAS_PROXY_GRANTING_TICKET_TIME_TO_LIVE * Time.SECOND,
+			PropsValues.CAS_PROXY_GRANTING_TICKET_MAX_SIZE);
+	}
+
+	public CASProxyGrantingTicketStorage(long timeToLive, int maxSize) {
+		_timeToLiveTicks = (int)Math.max(
+			1, (timeToLive + _TICK_DURATION - 1) / _TICK_DURATION);
+		_maxSize = Math.max(1, maxSize);
+
+		int wheelSize = _timeToLiveTicks + 1;
+
+		_slots = new ArrayList<Queue<String>>(wheelSize);
+
+		for (int i = 0; i < wheelSize; i++) {
+			_slots.add(new ConcurrentLinkedQueue<String>());
+		}
+
+		_currentTick = getTick();
+	}
+
+	public void cleanUp() {
+		advance();
+	}
+
+	public long getEvictionCount() {
+		return _evictionCount.get();
+	}
+
+	public int getSize() {
+		return _size.get();
+	}
+
+	public String retrieve(String proxyGrantingTicketIou) {
+		long tick = advance();
+
+		Entry entry = _entries.remove(proxyGrantingTicketIou);
+
+		if (entry == null) {
+			return null;
+		}
+
+		_size.decrementAndGet();
+
+		if (entry.getExpirationTick() <= tick) {
+			return null;
+		}
+
+		return entry.getProxyGrantingTicket();
+	}
+
+	public void save(
+		String proxyGrantingTicketIou, String proxyGrantingTicket) {
+
+		long tick = advance();
+
+		if (!reserve(tick)) {
+			if (_log.isWarnEnabled()) {
+				_log.warn(
+					"Unable to store proxy granting ticket for " +
+						proxyGrantingTicketIou + ", storage is full");
+			}
+
+			return;
+		}
+
+		long expirationTick = tick + _timeToLiveTicks;
+
+		Entry previousEntry = _entries.put(
+			proxyGrantingTicketIou,
+			new Entry(proxyGrantingTicket, expirationTick));
+
+		if (previousEntry != null) {
+			_size.decrementAndGet();
+		}
+
+		getSlot(expirationTick).add(proxyGrantingTicketIou);
+	}
+
+	/**
+	 * Drains the slots that became due since the wheel was last advanced and
+	 * returns the current tick. Only one caller advances the wheel at a time,
+	 * the others carry on with the current tick.
+	 */
+	protected long advance() {
+		long tick = getTick();
+
+		if ((tick <= _currentTick) || !_lock.tryLock()) {
+			return tick;
+		}
+
+		try {
+			long fromTick = Math.max(
+				_currentTick + 1, tick - _slots.size() + 1);
+
+			for (long i = fromTick; i <= tick; i++) {
+				expire(getSlot(i), tick);
+			}
+
+			_currentTick = tick;
+		}
+		finally {
+			_lock.unlock();
+		}
+
+		return tick;
+	}
+
+	/**
+	 * Removes the oldest ticket still stored. Keys of tickets that were
+	 * already retrieved are dropped from the wheel on the way.
+	 */
+	protected boolean evict(long tick) {
+		for (int i = 1; i <= _slots.size(); i++) {
+			Queue<String> slot = getSlot(tick + i);
+
+			String proxyGrantingTicketIou = null;
+
+			while ((proxyGrantingTicketIou = slot.poll()) != null) {
+				Entry entry = _entries.get(proxyGrantingTicketIou);
+
+				if (entry == null) {
+					continue;
+				}
+
+				if (_entries.remove(proxyGrantingTicketIou, entry)) {
+					_size.decrementAndGet();
+
+					_evictionCount.incrementAndGet();
+
+					return true;
+				}
+
+				requeue(proxyGrantingTicketIou);
+			}
+		}
+
+		return false;
+	}
+
+	protected void expire(Queue<String> slot, long tick) {
+		List<String> pendingProxyGrantingTicketIous = null;
+
+		String proxyGrantingTicketIou = null;
+
+		while ((proxyGrantingTicketIou = slot.poll()) != null) {
+			Entry entry = _entries.get(proxyGrantingTicketIou);
+
+			if (entry == null) {
+				continue;
+			}
+
+			if (entry.getExpirationTick() > tick) {
+
+				// Stored by a caller that was already on a later tick, keep it
+				// for the next turn of the wheel
+
+				if (pendingProxyGrantingTicketIous == null) {
+					pendingProxyGrantingTicketIous = new ArrayList<String>();
+				}
+
+				pendingProxyGrantingTicketIous.add(proxyGrantingTicketIou);
+			}
+			else if (_entries.remove(proxyGrantingTicketIou, entry)) {
+				_size.decrementAndGet();
+			}
+			else {
+				requeue(proxyGrantingTicketIou);
+			}
+		}
+
+		if (pendingProxyGrantingTicketIous != null) {
+			slot.addAll(pendingProxyGrantingTicketIous);
+		}
+	}
+
+	protected Queue<String> getSlot(long tick) {
+		return _slots.get((int)(tick % _slots.size()));
+	}
+
+	protected long getTick() {
+		return System.currentTimeMillis() / _TICK_DURATION;
+	}
+
+	/**
+	 * Puts the key of a ticket that a concurrent save replaced back on the
+	 * wheel, in the slot of the ticket that replaced it. The save adds the key
+	 * to that slot as well, but the key taken off the wheel may have been the
+	 * one it added.
+	 */
+	protected void requeue(String proxyGrantingTicketIou) {
+		Entry entry = _entries.get(proxyGrantingTicketIou);
+
+		if (entry != null) {
+			getSlot(entry.getExpirationTick()).add(proxyGrantingTicketIou);
+		}
+	}
+
+	/**
+	 * Reserves room for one more ticket, evicting the oldest ticket if the
+	 * storage is full, so that the size bound holds under concurrent saves.
+	 */
+	protected boolean reserve(long tick) {
+		while (true) {
+			int size = _size.get();
+
+			if (size < _maxSize) {
+				if (_size.compareAndSet(size, size + 1)) {
+					return true;
+				}
+			}
+			else if (!evict(tick)) {
+				return false;
+			}
+		}
+	}
+
+	private static final long _TICK_DURATION = Time.SECOND;
+
+	private static Log _log = LogFactoryUtil.getLog(
+		CASProxyGrantingTicketStorage.class);
+
+	private volatile long _currentTick;
+	private ConcurrentMap<String, Entry> _entries =
+		new ConcurrentHashMap<String, Entry>();
+	private AtomicLong _evictionCount = new AtomicLong();
+	private Lock _lock = new ReentrantLock();
+	private int _maxSize;
+	private AtomicInteger _size = new AtomicInteger();
+	private List<Queue<String>> _slots;
+	private int _timeToLiveTicks;
+
+	private static class Entry {
+
+		public Entry(String proxyGrantingTicket, long expirationTick) {
+			_proxyGrantingTicket = proxyGrantingTicket;
+			_expirationTick = expirationTick;
+		}
+
+		public long getExpirationTick() {
+			return _expirationTick;
+		}
+
+		public String getProxyGrantingTicket() {
+			return _proxyGrantingTicket;
+		}
+
+		private long _expirationTick;
+		private String _proxyGrantingTicket;
+
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.HttpUtil;
+import com.liferay.portal.kernel.util.StringPool;
+
+import org.jasig.cas.client.proxy.ProxyRetriever;
+
+/**
+ * Requests proxy tickets from the CAS server through the pooled
+ * {@link CASHttpUtil} client instead of opening a new connection per request
+ * like the stock <code>Cas20ProxyRetriever</code>. Requests are guarded by
+ * the <code>cas.proxy</code> circuit breaker.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASProxyRetriever implements ProxyRetriever {
+
+	public CASProxyRetriever(String casServerUrlPrefix) {
+		if (casServerUrlPrefix.endsWith(StringPool.SLASH)) {
+			_proxyUrl = casServerUrlPrefix + "proxy";
+		}
+		else {
+			_proxyUrl = casServerUrlPrefix + "/proxy";
+		}
+	}
+
+	public String getProxyTicketIdFor(
+		String proxyGrantingTicketId, String targetService) {
+
+		CASCircuitBreaker casCircuitBreaker = CASHttpUtil.getCircuitBreaker(
+			"proxy");
+
+		if ((casCircuitBreaker != null) &&
+			!casCircuitBreaker.allowRequest()) {
+
+			if (_log.isWarnEnabled()) {
+				_log.warn(
+					"Not requesting a proxy ticket for " + targetService +
+						" while circuit breaker " +
+							casCircuitBreaker.getName() + " is open");
+			}
+
+			return null;
+		}
+
+		String url =
+			_proxyUrl + "?pgt=" + HttpUtil.encodeURL(proxyGrantingTicketId) +
+				"&targetService=" + HttpUtil.encodeURL(targetService);
+
+		try {
+			String[] element = CASHttpUtil.getFirstElementText(
+				url, "proxyFailure", "proxyTicket");
+
+			// A proxy failure is still an answer from the CAS server
+
+			if (casCircuitBreaker != null) {
+				casCircuitBreaker.recordSuccess();
+			}
+
+			if ((element == null) || element[0].equals("proxyFailure")) {
+				if (_log.isWarnEnabled()) {
+					String error = null;
+
+					if (element != null) {
+						error = element[2] + " " + element[1];
+					}
+
+					_log.warn(
+						"Unable to get a proxy ticket for " + targetService +
+							": " + error);
+				}
+
+				return null;
+			}
+
+			return element[1];
+		}
+		catch (Exception e) {
+			if (casCircuitBreaker != null) {
+				casCircuitBreaker.recordFailure();
+			}
+
+			_log.error(
+				"Unable to get a proxy ticket for " + targetService, e);
+
+			return null;
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(CASProxyRetriever.class);
+
+	private String _proxyUrl;
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming parser for the CAS 2.0 and 3.0 protocol responses. Responses are
+ * read straight from the connection and parsing stops as soon as the
+ * requested elements have been seen, so neither the full response nor a DOM
+ * is ever held in memory.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASResponseParser {
+
+	/**
+	 * Returns the attributes released in the <code>cas:attributes</code>
+	 * element of a validation response. Attributes that are released more
+	 * than once are returned as a list of values.
+	 */
+	public static Map<String, Object> getAttributes(Reader reader)
+		throws XMLStreamException {
+
+		XMLStreamReader xmlStreamReader = _xmlInputFactory.createXMLStreamReader(
+			reader);
+
+		try {
+			Map<String, Object> attributes = new HashMap<String, Object>();
+
+			if (!nextElement(xmlStreamReader, "attributes")) {
+				return attributes;
+			}
+
+			while (xmlStreamReader.hasNext()) {
+				int event = xmlStreamReader.next();
+
+				if (event == XMLStreamConstants.END_ELEMENT) {
+					break;
+				}
+				else if (event != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+
+				String name = xmlStreamReader.getLocalName();
+				String value = xmlStreamReader.getElementText();
+
+				addAttribute(attributes, name, value);
+			}
+
+			return attributes;
+		}
+		finally {
+			xmlStreamReader.close();
+		}
+	}
+
+	/**
+	 * Returns the local name, text and <code>code</code> attribute of the
+	 * first element matching one of the given local names, or
+	 * <code>null</code> if none is present. The code is <code>null</code> if
+	 * the element has none, it is only set on failure elements such as
+	 * <code>cas:authenticationFailure</code> and <code>cas:proxyFailure</code>.
+	 */
+	public static String[] getFirstElementText(
+			InputStream inputStream, String... localNames)
+		throws XMLStreamException {
+
+		XMLStreamReader xmlStreamReader = _xmlInputFactory.createXMLStreamReader(
+			inputStream);
+
+		try {
+			while (xmlStreamReader.hasNext()) {
+				if (xmlStreamReader.next() !=
+						XMLStreamConstants.START_ELEMENT) {
+
+					continue;
+				}
+
+				String localName = xmlStreamReader.getLocalName();
+
+				for (String curLocalName : localNames) {
+					if (curLocalName.equals(localName)) {
+						String code = xmlStreamReader.getAttributeValue(
+							null, "code");
+
+						return new String[] {
+							localName, xmlStreamReader.getElementText().trim(),
+							code
+						};
+					}
+				}
+			}
+
+			return null;
+		}
+		finally {
+			xmlStreamReader.close();
+		}
+	}
+
+	protected static void addAttribute(
+		Map<String, Object> attributes, String name, String value) {
+
+		Object curValue = attributes.get(name);
+
+		if (curValue == null) {
+			attributes.put(name, value);
+		}
+		else if (curValue instanceof List<?>) {
+			List<String> values = (List<String>)curValue;
+
+			values.add(value);
+		}
+		else {
+			List<String> values = new ArrayList<String>(2);
+
+			values.add((String)curValue);
+			values.add(value);
+
+			attributes.put(name, values);
+		}
+	}
+
+	protected static boolean nextElement(
+			XMLStreamReader xmlStreamReader, String localName)
+		throws XMLStreamException {
+
+		while (xmlStreamReader.hasNext()) {
+			if ((xmlStreamReader.next() == XMLStreamConstants.START_ELEMENT) &&
+				localName.equals(xmlStreamReader.getLocalName())) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static XMLInputFactory _xmlInputFactory;
+
+	static {
+		_xmlInputFactory = XMLInputFactory.newInstance();
+
+		_xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		_xmlInputFactory.setProperty(
+			XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		_xmlInputFactory.setProperty(
+			XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		_xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+	}
+
+}
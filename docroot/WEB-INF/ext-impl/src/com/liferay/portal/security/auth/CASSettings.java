@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.exception.SystemException;
+import com.liferay.portal.kernel.util.PropsKeys;
+import com.liferay.portal.kernel.util.StringPool;
+import com.liferay.portal.kernel.util.StringUtil;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.model.CompanyConstants;
+import com.liferay.portal.util.PrefsPropsUtil;
+import com.liferay.portal.util.PropsValues;
+
+import java.io.Serializable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.portlet.PortletPreferences;
+
+/**
+ * Immutable snapshot of the CAS settings of a single company. Instances are
+ * built once from the portal preferences and shared by every request through
+ * {@link CASSettingsUtil}. Two snapshots are equal if they were built from
+ * the same settings, including the company's <code>ldap.</code> preferences
+ * that the pooled LDAP contexts and LDAP server profiles are built from.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASSettings implements Serializable {
+
+	public static CASSettings getInstance(long companyId)
+		throws SystemException {
+
+		return new CASSettings(companyId);
+	}
+
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof CASSettings)) {
+			return false;
+		}
+
+		CASSettings casSettings = (CASSettings)obj;
+
+		if (_assertionUserMappings.equals(casSettings._assertionUserMappings) &&
+			(_authEnabled == casSettings._authEnabled) &&
+			_authType.equals(casSettings._authType) &&
+			(_clearPassEnabled == casSettings._clearPassEnabled) &&
+			(_clearPassLazy == casSettings._clearPassLazy) &&
+			_clearPassUrl.equals(casSettings._clearPassUrl) &&
+			(_companyId == casSettings._companyId) &&
+			(_importFromAssertion == casSettings._importFromAssertion) &&
+			(_importFromLDAP == casSettings._importFromLDAP) &&
+			(_ldapSearchParallel == casSettings._ldapSearchParallel) &&
+			(_ldapSearchTimeout == casSettings._ldapSearchTimeout) &&
+			Arrays.equals(_ldapServerIds, casSettings._ldapServerIds) &&
+			_ldapSettings.equals(casSettings._ldapSettings) &&
+			(_ldapSyncInterval == casSettings._ldapSyncInterval)) {
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the user fields mapped to the CAS attributes they are imported
+	 * from. The map is shared and must not be modified.
+	 */
+	public Map<String, String> getAssertionUserMappings() {
+		return _assertionUserMappings;
+	}
+
+	public String getAuthType() {
+		return _authType;
+	}
+
+	public String getClearPassUrl() {
+		return _clearPassUrl;
+	}
+
+	public long getCompanyId() {
+		return _companyId;
+	}
+
+	public long getLDAPSearchTimeout() {
+		return _ldapSearchTimeout;
+	}
+
+	public long[] getLDAPServerIds() {
+		return _ldapServerIds.clone();
+	}
+
+	public long getLDAPSyncInterval() {
+		return _ldapSyncInterval;
+	}
+
+	public int hashCode() {
+		return (int)_companyId ^ _ldapSettings.hashCode();
+	}
+
+	public boolean isAuthEnabled() {
+		return _authEnabled;
+	}
+
+	public boolean isAuthTypeScreenName() {
+		return _authTypeScreenName;
+	}
+
+	public boolean isClearPassEnabled() {
+		return _clearPassEnabled;
+	}
+
+	public boolean isClearPassLazy() {
+		return _clearPassLazy;
+	}
+
+	public boolean isExpired(long timeToLive) {
+		if ((System.currentTimeMillis() - _createTime) >= timeToLive) {
+			return true;
+		}
+
+		return false;
+	}
+
+	public boolean isImportFromAssertion() {
+		return _importFromAssertion;
+	}
+
+	public boolean isImportFromLDAP() {
+		return _importFromLDAP;
+	}
+
+	public boolean isLDAPSearchParallel() {
+		return _ldapSearchParallel;
+	}
+
+	protected CASSettings(long companyId) throws SystemException {
+		_companyId = companyId;
+		_createTime = System.currentTimeMillis();
+
+		String[] assertionUserMappings = PrefsPropsUtil.getStringArray(
+			companyId, PropsKeys.CAS_ASSERTION_USER_MAPPINGS,
+			StringPool.COMMA, PropsValues.CAS_ASSERTION_USER_MAPPINGS);
+
+		for (String assertionUserMapping : assertionUserMappings) {
+			int pos = assertionUserMapping.indexOf(StringPool.EQUAL);
+
+			if (pos <= 0) {
+				continue;
+			}
+
+			_assertionUserMappings.put(
+				assertionUserMapping.substring(0, pos).trim(),
+				assertionUserMapping.substring(pos + 1).trim());
+		}
+
+		_authEnabled = PrefsPropsUtil.getBoolean(
+			companyId, PropsKeys.CAS_AUTH_ENABLED,
+			PropsValues.CAS_AUTH_ENABLED);
+		_authType = PrefsPropsUtil.getString(
+			companyId, PropsKeys.COMPANY_SECURITY_AUTH_TYPE,
+			PropsValues.COMPANY_SECURITY_AUTH_TYPE);
+		_authTypeScreenName = _authType.equals(CompanyConstants.AUTH_TYPE_SN);
+		_clearPassEnabled = PrefsPropsUtil.getBoolean(
+			companyId, PropsKeys.CAS_CLEARPASS_ENABLED,
+			PropsValues.CAS_CLEARPASS_ENABLED);
+		_clearPassLazy = PrefsPropsUtil.getBoolean(
+			companyId, PropsKeys.CAS_CLEARPASS_LAZY,
+			PropsValues.CAS_CLEARPASS_LAZY);
+		_clearPassUrl = PrefsPropsUtil.getString(
+			companyId, PropsKeys.CAS_CLEARPASS_URL,
+			PropsValues.CAS_CLEARPASS_URL);
+		_importFromAssertion = PrefsPropsUtil.getBoolean(
+			companyId, PropsKeys.CAS_IMPORT_FROM_ASSERTION,
+			PropsValues.CAS_IMPORT_FROM_ASSERTION);
+		_importFromLDAP = PrefsPropsUtil.getBoolean(
+			companyId, PropsKeys.CAS_IMPORT_FROM_LDAP,
+			PropsValues.CAS_IMPORT_FROM_LDAP);
+
+		long[] ldapServerIds = StringUtil.split(
+			PrefsPropsUtil.getString(companyId, "ldap.server.ids"), 0L);
+
+		if (ldapServerIds.length <= 0) {
+			ldapServerIds = new long[] {0};
+		}
+
+		_ldapServerIds = ldapServerIds;
+
+		_ldapSearchParallel = PrefsPropsUtil.getBoolean(
+			companyId, PropsKeys.CAS_LDAP_SEARCH_PARALLEL,
+			PropsValues.CAS_LDAP_SEARCH_PARALLEL);
+		_ldapSearchTimeout = PrefsPropsUtil.getLong(
+			companyId, PropsKeys.CAS_LDAP_SEARCH_TIMEOUT,
+			PropsValues.CAS_LDAP_SEARCH_TIMEOUT);
+		_ldapSyncInterval =
+			PrefsPropsUtil.getLong(
+				companyId, PropsKeys.CAS_LDAP_SYNC_INTERVAL,
+				PropsValues.CAS_LDAP_SYNC_INTERVAL) * Time.SECOND;
+
+		PortletPreferences preferences = PrefsPropsUtil.getPreferences(
+			companyId);
+
+		Map<String, String[]> preferencesMap = preferences.getMap();
+
+		for (Map.Entry<String, String[]> entry : preferencesMap.entrySet()) {
+			String key = entry.getKey();
+
+			if (key.startsWith("ldap.")) {
+				_ldapSettings.put(key, StringUtil.merge(entry.getValue()));
+			}
+		}
+	}
+
+	private final HashMap<String, String> _assertionUserMappings =
+		new HashMap<String, String>();
+	private final boolean _authEnabled;
+	private final String _authType;
+	private final boolean _authTypeScreenName;
+	private final boolean _clearPassEnabled;
+	private final boolean _clearPassLazy;
+	private final String _clearPassUrl;
+	private final long _companyId;
+	private final long _createTime;
+	private final boolean _importFromAssertion;
+	private final boolean _importFromLDAP;
+	private final boolean _ldapSearchParallel;
+	private final long _ldapSearchTimeout;
+	private final long[] _ldapServerIds;
+	private final TreeMap<String, String> _ldapSettings =
+		new TreeMap<String, String>();
+	private final long _ldapSyncInterval;
+
+}
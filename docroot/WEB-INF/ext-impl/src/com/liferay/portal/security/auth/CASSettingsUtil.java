@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.cache.MultiVMPoolUtil;
+import com.liferay.portal.kernel.cache.PortalCache;
+import com.liferay.portal.kernel.exception.SystemException;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.security.ldap.LDAPContextPoolUtil;
+import com.liferay.portal.security.ldap.LDAPServerProfileUtil;
+import com.liferay.portal.util.PropsValues;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds one {@link CASSettings} per company in a multi VM cache. Snapshots
+ * are built lazily and removed by {@link #reset(long)} when the company's
+ * portal preferences change, so readers never observe a partially updated
+ * set of settings. The removal is replicated to the other cluster nodes,
+ * which then rebuild the snapshot from the portal preferences as well.
+ * Snapshots are also rebuilt once they are older than
+ * <code>cas.settings.time.to.live</code> seconds, in case a removal was not
+ * replicated.
+ *
+ * <p>
+ * When a node rebuilds a snapshot that differs from the one it built before,
+ * whether after a reset or once the old one expired, it also drops its pooled
+ * LDAP contexts, LDAP server profiles and negative LDAP lookups of the
+ * company, since they depend on the same preferences.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASSettingsUtil {
+
+	public static CASSettings getSettings(long companyId)
+		throws SystemException {
+
+		String key = String.valueOf(companyId);
+
+		CASSettings casSettings = (CASSettings)_portalCache.get(key);
+
+		if ((casSettings != null) &&
+			((PropsValues.CAS_SETTINGS_TIME_TO_LIVE <= 0) ||
+			 !casSettings.isExpired(
+				 PropsValues.CAS_SETTINGS_TIME_TO_LIVE * Time.SECOND))) {
+
+			return casSettings;
+		}
+
+		casSettings = CASSettings.getInstance(companyId);
+
+		CASSettings previousCASSettings = _previousCASSettings.put(
+			companyId, casSettings);
+
+		if ((previousCASSettings != null) &&
+			!previousCASSettings.equals(casSettings)) {
+
+			if (_log.isDebugEnabled()) {
+				_log.debug("CAS settings of company " + companyId + " changed");
+			}
+
+			CASLDAPNegativeCacheUtil.purge(companyId);
+			LDAPContextPoolUtil.reset(companyId);
+			LDAPServerProfileUtil.reset(companyId);
+		}
+
+		_portalCache.put(key, casSettings);
+
+		return casSettings;
+	}
+
+	public static void reset() {
+		_portalCache.removeAll();
+	}
+
+	public static void reset(long companyId) {
+		_portalCache.remove(String.valueOf(companyId));
+	}
+
+	private static final String _CACHE_NAME = CASSettingsUtil.class.getName();
+
+	private static Log _log = LogFactoryUtil.getLog(CASSettingsUtil.class);
+
+	private static PortalCache _portalCache = MultiVMPoolUtil.getCache(
+		_CACHE_NAME);
+	private static ConcurrentMap<Long, CASSettings> _previousCASSettings =
+		new ConcurrentHashMap<Long, CASSettings>();
+
+}
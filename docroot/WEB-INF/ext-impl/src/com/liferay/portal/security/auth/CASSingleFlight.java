@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses concurrent calls for the same key into one. The first caller runs
+ * the callable, callers that arrive while it is running wait for it and get
+ * the same result or exception. Results are not kept once the call completes.
+ * Waiting callers can be given a timeout so that a hung call does not hold
+ * them for longer than the caller itself would have waited.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASSingleFlight<T> {
+
+	public T execute(String key, Callable<T> callable) throws Exception {
+		return execute(key, callable, 0);
+	}
+
+	/**
+	 * Runs the callable or waits for the call already running for the key.
+	 * Callers that wait give up after the given milliseconds with a
+	 * <code>TimeoutException</code>, unless the timeout is not positive. The
+	 * caller that runs the callable is not limited.
+	 */
+	public T execute(String key, Callable<T> callable, long timeout)
+		throws Exception {
+
+		FutureTask<T> futureTask = new FutureTask<T>(callable);
+
+		FutureTask<T> curFutureTask = _futureTasks.putIfAbsent(
+			key, futureTask);
+
+		if (curFutureTask == null) {
+			curFutureTask = futureTask;
+
+			try {
+				futureTask.run();
+			}
+			finally {
+				_futureTasks.remove(key, futureTask);
+			}
+		}
+		else {
+			_sharedCount.incrementAndGet();
+		}
+
+		try {
+			if ((curFutureTask == futureTask) || (timeout <= 0)) {
+				return curFutureTask.get();
+			}
+
+			return curFutureTask.get(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+
+			if (cause instanceof Exception) {
+				throw (Exception)cause;
+			}
+
+			throw ee;
+		}
+	}
+
+	public int getInFlightCount() {
+		return _futureTasks.size();
+	}
+
+	public long getSharedCount() {
+		return _sharedCount.get();
+	}
+
+	private ConcurrentMap<String, FutureTask<T>> _futureTasks =
+		new ConcurrentHashMap<String, FutureTask<T>>();
+	private AtomicLong _sharedCount = new AtomicLong();
+
+}
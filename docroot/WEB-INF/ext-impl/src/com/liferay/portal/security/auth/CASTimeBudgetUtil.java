@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+/**
+ * Time budget shared by the back channel calls one request makes to the CAS
+ * server, such as a proxy ticket request followed by a ClearPass request.
+ * Callers that start a budget must end it in a finally block. Threads
+ * without a budget are not limited.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASTimeBudgetUtil {
+
+	public static void end() {
+		_deadline.remove();
+	}
+
+	/**
+	 * Returns the milliseconds left in the current thread's budget, or
+	 * <code>Long.MAX_VALUE</code> if the thread has no budget.
+	 */
+	public static long getRemaining() {
+		Long deadline = _deadline.get();
+
+		if (deadline == null) {
+			return Long.MAX_VALUE;
+		}
+
+		return deadline.longValue() - System.currentTimeMillis();
+	}
+
+	/**
+	 * Starts a budget of the given milliseconds for the current thread.
+	 * Returns <code>false</code> without changing anything if the budget is
+	 * not positive or the thread already has a budget, in which case the
+	 * caller must not end it.
+	 */
+	public static boolean start(long budget) {
+		if ((budget <= 0) || (_deadline.get() != null)) {
+			return false;
+		}
+
+		_deadline.set(System.currentTimeMillis() + budget);
+
+		return true;
+	}
+
+	private static ThreadLocal<Long> _deadline = new ThreadLocal<Long>();
+
+}
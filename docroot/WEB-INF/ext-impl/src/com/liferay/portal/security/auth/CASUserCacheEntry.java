@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import java.io.Serializable;
+
+/**
+ * The part of a resolved CAS principal that is needed to build the auto login
+ * credentials. The refresh flag is not serialized, a copy received from
+ * another cluster node starts out without a refresh in progress.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASUserCacheEntry implements Serializable {
+
+	public CASUserCacheEntry(
+		String key, long userId, String password, long refreshTime,
+		long expirationTime) {
+
+		_key = key;
+		_userId = userId;
+		_password = password;
+		_refreshTime = refreshTime;
+		_expirationTime = expirationTime;
+	}
+
+	public long getExpirationTime() {
+		return _expirationTime;
+	}
+
+	public String getKey() {
+		return _key;
+	}
+
+	public String getPassword() {
+		return _password;
+	}
+
+	public long getRefreshTime() {
+		return _refreshTime;
+	}
+
+	public long getUserId() {
+		return _userId;
+	}
+
+	public boolean isExpired(long now) {
+		if (now >= _expirationTime) {
+			return true;
+		}
+
+		return false;
+	}
+
+	public boolean isRefreshDue(long now) {
+		if (now >= _refreshTime) {
+			return true;
+		}
+
+		return false;
+	}
+
+	protected synchronized boolean startRefresh() {
+		if (_refreshing) {
+			return false;
+		}
+
+		_refreshing = true;
+
+		return true;
+	}
+
+	protected synchronized void stopRefresh() {
+		_refreshing = false;
+	}
+
+	private final long _expirationTime;
+	private final String _key;
+	private final String _password;
+	private transient boolean _refreshing;
+	private final long _refreshTime;
+	private final long _userId;
+
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.NoSuchUserException;
+import com.liferay.portal.kernel.cache.MultiVMPoolUtil;
+import com.liferay.portal.kernel.cache.PortalCache;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.StringPool;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.model.User;
+import com.liferay.portal.service.UserLocalServiceUtil;
+import com.liferay.portal.util.PropsValues;
+
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache that maps a CAS principal to the user id and password hash of
+ * the matching portal user. Entries live for
+ * <code>cas.user.cache.time.to.live</code> seconds and are reloaded in the
+ * background once they are within <code>cas.user.cache.refresh.ahead</code>
+ * seconds of expiring, so a popular principal never falls out of the cache
+ * and never causes several threads to hit the user service at once.
+ *
+ * <p>
+ * Entries are kept in a multi VM cache, so removing an entry after the user
+ * changed on one cluster node removes it on the other nodes as well. Each
+ * node bounds the keys it has put to <code>cas.user.cache.max.size</code>
+ * and evicts them in the order they were first cached. A key is only queued
+ * for eviction once, no matter how often its entry is refreshed.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASUserCacheUtil {
+
+	public static void clear() {
+		_portalCache.removeAll();
+
+		_evictionQueue.clear();
+		_keys.clear();
+	}
+
+	public static long getEvictionCount() {
+		return _evictionCount.get();
+	}
+
+	public static long getHitCount() {
+		return _hitCount.get();
+	}
+
+	public static long getMissCount() {
+		return _missCount.get();
+	}
+
+	public static long getRefreshCount() {
+		return _refreshCount.get();
+	}
+
+	/**
+	 * Returns the number of keys this node has cached. Keys whose entries were
+	 * removed on another node are counted until they are evicted or cached
+	 * again.
+	 */
+	public static int getSize() {
+		return _keys.size();
+	}
+
+	public static CASUserCacheEntry getUser(
+			long companyId, boolean authTypeScreenName, String login)
+		throws Exception {
+
+		String key = getKey(companyId, authTypeScreenName, login);
+
+		long now = System.currentTimeMillis();
+
+		CASUserCacheEntry entry = (CASUserCacheEntry)_portalCache.get(key);
+
+		if ((entry != null) && !entry.isExpired(now)) {
+			_hitCount.incrementAndGet();
+
+			if (entry.isRefreshDue(now) && entry.startRefresh()) {
+				refresh(entry, companyId, authTypeScreenName, login);
+			}
+
+			return entry;
+		}
+
+		_missCount.incrementAndGet();
+
+		User user = null;
+
+		if (authTypeScreenName) {
+			user = UserLocalServiceUtil.getUserByScreenName(companyId, login);
+		}
+		else {
+			user = UserLocalServiceUtil.getUserByEmailAddress(companyId, login);
+		}
+
+		return put(key, user);
+	}
+
+	public static void invalidate(User user) {
+		invalidate(
+			getKey(user.getCompanyId(), true, user.getScreenName()), user);
+		invalidate(
+			getKey(user.getCompanyId(), false, user.getEmailAddress()), user);
+	}
+
+	public static void put(
+		long companyId, boolean authTypeScreenName, String login, User user) {
+
+		put(getKey(companyId, authTypeScreenName, login), user);
+	}
+
+	public static void remove(
+		long companyId, boolean authTypeScreenName, String login) {
+
+		_portalCache.remove(getKey(companyId, authTypeScreenName, login));
+	}
+
+	public static void remove(User user) {
+		_portalCache.remove(
+			getKey(user.getCompanyId(), true, user.getScreenName()));
+		_portalCache.remove(
+			getKey(user.getCompanyId(), false, user.getEmailAddress()));
+	}
+
+	protected static String getKey(
+		long companyId, boolean authTypeScreenName, String login) {
+
+		StringBuilder sb = new StringBuilder(login.length() + 24);
+
+		sb.append(companyId);
+		sb.append(StringPool.POUND);
+
+		if (authTypeScreenName) {
+			sb.append("sn");
+		}
+		else {
+			sb.append("ea");
+		}
+
+		sb.append(StringPool.POUND);
+		sb.append(login.toLowerCase());
+
+		return sb.toString();
+	}
+
+	protected static void invalidate(String key, User user) {
+		CASUserCacheEntry entry = (CASUserCacheEntry)_portalCache.get(key);
+
+		// Updates that leave the user id and password alone, such as the last
+		// login date being stamped on every login, keep the entry. Without a
+		// local entry the removal is still sent, since another node may have
+		// cached the user.
+
+		if ((entry != null) && (entry.getUserId() == user.getUserId()) &&
+			entry.getPassword().equals(user.getPassword())) {
+
+			return;
+		}
+
+		_portalCache.remove(key);
+	}
+
+	protected static CASUserCacheEntry put(String key, User user) {
+		long now = System.currentTimeMillis();
+
+		long timeToLive = PropsValues.CAS_USER_CACHE_TIME_TO_LIVE * Time.SECOND;
+		long refreshAhead = Math.min(
+			PropsValues.CAS_USER_CACHE_REFRESH_AHEAD * Time.SECOND,
+			timeToLive);
+
+		CASUserCacheEntry entry = new CASUserCacheEntry(
+			key, user.getUserId(), user.getPassword(),
+			now + timeToLive - refreshAhead, now + timeToLive);
+
+		_portalCache.put(key, entry);
+
+		// Refreshing an entry puts the same key again, only new keys are
+		// queued
+
+		if (!_keys.add(key)) {
+			return entry;
+		}
+
+		_evictionQueue.offer(key);
+
+		while (_keys.size() > PropsValues.CAS_USER_CACHE_MAX_SIZE) {
+			String evictedKey = _evictionQueue.poll();
+
+			if (evictedKey == null) {
+				break;
+			}
+
+			if (_keys.remove(evictedKey)) {
+				_portalCache.remove(evictedKey);
+
+				_evictionCount.incrementAndGet();
+			}
+		}
+
+		return entry;
+	}
+
+	protected static void refresh(
+		final CASUserCacheEntry entry, final long companyId,
+		final boolean authTypeScreenName, final String login) {
+
+		Runnable runnable = new Runnable() {
+
+			public void run() {
+				try {
+					User user = null;
+
+					if (authTypeScreenName) {
+						user = UserLocalServiceUtil.getUserByScreenName(
+							companyId, login);
+					}
+					else {
+						user = UserLocalServiceUtil.getUserByEmailAddress(
+							companyId, login);
+					}
+
+					if (_portalCache.get(entry.getKey()) == entry) {
+						put(entry.getKey(), user);
+					}
+
+					_refreshCount.incrementAndGet();
+				}
+				catch (NoSuchUserException nsue) {
+					if (_portalCache.get(entry.getKey()) == entry) {
+						_portalCache.remove(entry.getKey());
+					}
+				}
+				catch (Exception e) {
+					_log.error("Unable to refresh CAS user " + login, e);
+
+					entry.stopRefresh();
+				}
+			}
+
+		};
+
+		if (!CASExecutorUtil.execute(runnable)) {
+			entry.stopRefresh();
+		}
+	}
+
+	private static final String _CACHE_NAME = CASUserCacheUtil.class.getName();
+
+	private static Log _log = LogFactoryUtil.getLog(CASUserCacheUtil.class);
+
+	private static AtomicLong _evictionCount = new AtomicLong();
+	private static Queue<String> _evictionQueue =
+		new ConcurrentLinkedQueue<String>();
+	private static AtomicLong _hitCount = new AtomicLong();
+	private static Set<String> _keys = Collections.newSetFromMap(
+		new ConcurrentHashMap<String, Boolean>());
+	private static AtomicLong _missCount = new AtomicLong();
+	private static PortalCache _portalCache = MultiVMPoolUtil.getCache(
+		_CACHE_NAME);
+	private static AtomicLong _refreshCount = new AtomicLong();
+
+}
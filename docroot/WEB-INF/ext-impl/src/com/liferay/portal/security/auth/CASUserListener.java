@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.ModelListenerException;
+import com.liferay.portal.kernel.util.Validator;
+import com.liferay.portal.model.BaseModelListener;
+import com.liferay.portal.model.User;
+import com.liferay.portal.model.impl.UserModelImpl;
+
+/**
+ * Keeps {@link CASUserCacheUtil} consistent with user updates and deletes and
+ * forgets the LDAP sync state of deleted users and of screen names and email
+ * addresses a user gave up.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASUserListener extends BaseModelListener<User> {
+
+	public void onAfterRemove(User user) throws ModelListenerException {
+		CASUserCacheUtil.remove(user);
+
+		CASLDAPSyncUtil.remove(user.getCompanyId(), user.getEmailAddress());
+		CASLDAPSyncUtil.remove(user.getCompanyId(), user.getScreenName());
+	}
+
+	public void onAfterUpdate(User user) throws ModelListenerException {
+		CASUserCacheUtil.invalidate(user);
+
+		String[] oldLogins = _oldLogins.get();
+
+		if (oldLogins == null) {
+			return;
+		}
+
+		_oldLogins.remove();
+
+		long companyId = user.getCompanyId();
+
+		if (Validator.isNotNull(oldLogins[0])) {
+			CASUserCacheUtil.remove(companyId, true, oldLogins[0]);
+			CASLDAPSyncUtil.remove(companyId, oldLogins[0]);
+		}
+
+		if (Validator.isNotNull(oldLogins[1])) {
+			CASUserCacheUtil.remove(companyId, false, oldLogins[1]);
+			CASLDAPSyncUtil.remove(companyId, oldLogins[1]);
+		}
+	}
+
+	/**
+	 * Remembers the screen name and email address the user had before the
+	 * update, so that the entries cached under them can be dropped once the
+	 * user no longer owns them.
+	 */
+	public void onBeforeUpdate(User user) throws ModelListenerException {
+		if (!(user instanceof UserModelImpl)) {
+			_oldLogins.remove();
+
+			return;
+		}
+
+		UserModelImpl userModelImpl = (UserModelImpl)user;
+
+		String oldScreenName = userModelImpl.getOriginalScreenName();
+
+		if (Validator.isNull(oldScreenName) ||
+			oldScreenName.equalsIgnoreCase(user.getScreenName())) {
+
+			oldScreenName = null;
+		}
+
+		String oldEmailAddress = userModelImpl.getOriginalEmailAddress();
+
+		if (Validator.isNull(oldEmailAddress) ||
+			oldEmailAddress.equalsIgnoreCase(user.getEmailAddress())) {
+
+			oldEmailAddress = null;
+		}
+
+		if ((oldScreenName == null) && (oldEmailAddress == null)) {
+			_oldLogins.remove();
+		}
+		else {
+			_oldLogins.set(new String[] {oldScreenName, oldEmailAddress});
+		}
+	}
+
+	private static ThreadLocal<String[]> _oldLogins =
+		new ThreadLocal<String[]>();
+
+}
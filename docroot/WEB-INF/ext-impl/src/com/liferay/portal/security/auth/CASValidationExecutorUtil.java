@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.util.PropsValues;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of daemon threads that only runs CAS ticket validations, so that
+ * logins do not wait behind the background work of {@link CASExecutorUtil}.
+ * Validations are handed to an idle or new thread and never queued. Once
+ * <code>cas.validation.executor.max.size</code> threads, and at least
+ * <code>cas.validation.max.concurrent</code>, are busy, further validations
+ * are rejected.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASValidationExecutorUtil {
+
+	public static boolean execute(Runnable runnable) {
+		try {
+			_threadPoolExecutor.execute(runnable);
+
+			return true;
+		}
+		catch (RejectedExecutionException ree) {
+			if (_log.isDebugEnabled()) {
+				_log.debug(
+					"All CAS validation threads are busy, rejecting task");
+			}
+
+			return false;
+		}
+	}
+
+	public static void shutdown() {
+		_threadPoolExecutor.shutdownNow();
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(
+		CASValidationExecutorUtil.class);
+
+	private static ThreadPoolExecutor _threadPoolExecutor;
+
+	static {
+		int maxSize = Math.max(
+			1,
+			Math.max(
+				PropsValues.CAS_VALIDATION_EXECUTOR_MAX_SIZE,
+				PropsValues.CAS_VALIDATION_MAX_CONCURRENT));
+
+		_threadPoolExecutor = new ThreadPoolExecutor(
+			0, maxSize, 60, TimeUnit.SECONDS,
+			new SynchronousQueue<Runnable>(),
+			new ThreadFactory() {
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(
+						runnable,
+						"CAS Validation " + _threadNumber.incrementAndGet());
+
+					thread.setDaemon(true);
+
+					return thread;
+				}
+
+				private AtomicInteger _threadNumber = new AtomicInteger();
+
+			});
+	}
+
+}
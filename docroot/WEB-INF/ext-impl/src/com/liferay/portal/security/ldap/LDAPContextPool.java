@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.ldap;
+
+import com.liferay.portal.kernel.exception.SystemException;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Pool of bound LDAP contexts for a single LDAP server of a company. At most
+ * <code>maxSize</code> contexts are borrowed or idle at any time. Idle
+ * contexts are handed out most recently used first, contexts that have been
+ * idle longer than <code>maxIdleTime</code> are closed, and contexts can be
+ * checked with a base search of the root DSE before they are handed out.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class LDAPContextPool {
+
+	public LDAPContextPool(
+		long ldapServerId, long companyId, int maxSize, long maxWait,
+		long maxIdleTime, boolean validateOnBorrow, boolean pooled) {
+
+		_ldapServerId = ldapServerId;
+		_companyId = companyId;
+		_maxWait = maxWait;
+		_maxIdleTime = maxIdleTime;
+		_validateOnBorrow = validateOnBorrow;
+		_pooled = pooled;
+
+		_maxSize = maxSize;
+		_semaphore = new Semaphore(maxSize, true);
+	}
+
+	public LdapContext borrowContext() throws Exception {
+		if (!_pooled) {
+			return bind();
+		}
+
+		if (!_semaphore.tryAcquire(_maxWait, TimeUnit.MILLISECONDS)) {
+			_waitTimeoutCount.incrementAndGet();
+
+			throw new LDAPContextPoolTimeoutException(
+				"Timed out waiting for an LDAP context for server " +
+					_ldapServerId);
+		}
+
+		try {
+			LdapContext ldapContext = pollIdleContext();
+
+			if (ldapContext == null) {
+				ldapContext = bind();
+			}
+
+			_borrowedCount.incrementAndGet();
+
+			return ldapContext;
+		}
+		catch (Exception e) {
+			_semaphore.release();
+
+			throw e;
+		}
+	}
+
+	public void close() {
+		_closed = true;
+
+		PooledContext pooledContext = null;
+
+		while ((pooledContext = _idleContexts.pollFirst()) != null) {
+			destroy(pooledContext.getLdapContext());
+		}
+	}
+
+	public int getActiveCount() {
+		if (!_pooled) {
+			return 0;
+		}
+
+		return _maxSize - _semaphore.availablePermits();
+	}
+
+	public long getBorrowedCount() {
+		return _borrowedCount.get();
+	}
+
+	public long getCreatedCount() {
+		return _createdCount.get();
+	}
+
+	public long getDestroyedCount() {
+		return _destroyedCount.get();
+	}
+
+	public long getCompanyId() {
+		return _companyId;
+	}
+
+	public int getIdleCount() {
+		return _idleContexts.size();
+	}
+
+	public long getLdapServerId() {
+		return _ldapServerId;
+	}
+
+	public int getMaxSize() {
+		return _maxSize;
+	}
+
+	public long getValidationFailureCount() {
+		return _validationFailureCount.get();
+	}
+
+	public long getWaitTimeoutCount() {
+		return _waitTimeoutCount.get();
+	}
+
+	public void invalidateContext(LdapContext ldapContext) {
+		try {
+			destroy(ldapContext);
+		}
+		finally {
+			if (_pooled) {
+				_semaphore.release();
+			}
+		}
+	}
+
+	public boolean isPooled() {
+		return _pooled;
+	}
+
+	public void returnContext(LdapContext ldapContext) {
+		if (!_pooled) {
+			destroy(ldapContext);
+
+			return;
+		}
+
+		try {
+			if (_closed) {
+				destroy(ldapContext);
+
+				return;
+			}
+
+			_idleContexts.offerFirst(
+				new PooledContext(ldapContext, System.currentTimeMillis()));
+
+			evictIdleContexts();
+		}
+		finally {
+			_semaphore.release();
+		}
+	}
+
+	protected LdapContext bind() throws Exception {
+		LdapContext ldapContext = PortalLDAPUtil.getContext(
+			_ldapServerId, _companyId);
+
+		if (ldapContext == null) {
+			throw new SystemException("Failed to bind to the LDAP server");
+		}
+
+		_createdCount.incrementAndGet();
+
+		return ldapContext;
+	}
+
+	protected void destroy(LdapContext ldapContext) {
+		_destroyedCount.incrementAndGet();
+
+		try {
+			ldapContext.close();
+		}
+		catch (NamingException ne) {
+			if (_log.isDebugEnabled()) {
+				_log.debug(ne, ne);
+			}
+		}
+	}
+
+	protected void evictIdleContexts() {
+		long idleSince = System.currentTimeMillis() - _maxIdleTime;
+
+		PooledContext pooledContext = null;
+
+		while ((pooledContext = _idleContexts.peekLast()) != null) {
+			if (pooledContext.getReturnTime() > idleSince) {
+				break;
+			}
+
+			if (_idleContexts.removeLastOccurrence(pooledContext)) {
+				destroy(pooledContext.getLdapContext());
+			}
+		}
+	}
+
+	protected boolean isValid(LdapContext ldapContext) {
+		try {
+			ldapContext.search(
+				"", "(objectClass=*)", _validationSearchControls).close();
+
+			return true;
+		}
+		catch (NamingException ne) {
+			_validationFailureCount.incrementAndGet();
+
+			if (_log.isDebugEnabled()) {
+				_log.debug(
+					"Discarding stale LDAP context for server " +
+						_ldapServerId + ": " + ne.getMessage());
+			}
+
+			return false;
+		}
+	}
+
+	protected LdapContext pollIdleContext() {
+		long idleSince = System.currentTimeMillis() - _maxIdleTime;
+
+		PooledContext pooledContext = null;
+
+		while ((pooledContext = _idleContexts.pollFirst()) != null) {
+			LdapContext ldapContext = pooledContext.getLdapContext();
+
+			if ((pooledContext.getReturnTime() <= idleSince) ||
+				(_validateOnBorrow && !isValid(ldapContext))) {
+
+				destroy(ldapContext);
+
+				continue;
+			}
+
+			return ldapContext;
+		}
+
+		return null;
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(LDAPContextPool.class);
+
+	private static SearchControls _validationSearchControls =
+		new SearchControls(
+			SearchControls.OBJECT_SCOPE, 1, 0, new String[] {"1.1"}, false,
+			false);
+
+	private AtomicLong _borrowedCount = new AtomicLong();
+	private volatile boolean _closed;
+	private long _companyId;
+	private AtomicLong _createdCount = new AtomicLong();
+	private AtomicLong _destroyedCount = new AtomicLong();
+	private BlockingDeque<PooledContext> _idleContexts =
+		new LinkedBlockingDeque<PooledContext>();
+	private long _ldapServerId;
+	private long _maxIdleTime;
+	private int _maxSize;
+	private long _maxWait;
+	private boolean _pooled;
+	private Semaphore _semaphore;
+	private boolean _validateOnBorrow;
+	private AtomicLong _validationFailureCount = new AtomicLong();
+	private AtomicLong _waitTimeoutCount = new AtomicLong();
+
+	private class PooledContext {
+
+		public PooledContext(LdapContext ldapContext, long returnTime) {
+			_ldapContext = ldapContext;
+			_returnTime = returnTime;
+		}
+
+		public LdapContext getLdapContext() {
+			return _ldapContext;
+		}
+
+		public long getReturnTime() {
+			return _returnTime;
+		}
+
+		private LdapContext _ldapContext;
+		private long _returnTime;
+
+	}
+
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.ldap;
+
+import com.liferay.portal.kernel.exception.SystemException;
+
+/**
+ * Thrown when no LDAP context of a {@link LDAPContextPool} becomes available
+ * in time. It says nothing about the health of the LDAP server itself.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class LDAPContextPoolTimeoutException extends SystemException {
+
+	public LDAPContextPoolTimeoutException() {
+		super();
+	}
+
+	public LDAPContextPoolTimeoutException(String msg) {
+		super(msg);
+	}
+
+	public LDAPContextPoolTimeoutException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+
+	public LDAPContextPoolTimeoutException(Throwable cause) {
+		super(cause);
+	}
+
+}
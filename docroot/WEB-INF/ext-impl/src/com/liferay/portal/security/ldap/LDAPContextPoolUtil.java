@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.ldap;
+
+import com.liferay.portal.kernel.util.StringPool;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.util.PropsValues;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one {@link LDAPContextPool} per company and LDAP server. Callers
+ * return a context to the pool they borrowed it from. When pooling is
+ * disabled with <code>cas.ldap.pool.enabled</code>, the pools bind and close a
+ * context for every call as before.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class LDAPContextPoolUtil {
+
+	public static LDAPContextPool getPool(long ldapServerId, long companyId) {
+		String key = getKey(ldapServerId, companyId);
+
+		LDAPContextPool ldapContextPool = _pools.get(key);
+
+		if (ldapContextPool != null) {
+			return ldapContextPool;
+		}
+
+		ldapContextPool = new LDAPContextPool(
+			ldapServerId, companyId, PropsValues.CAS_LDAP_POOL_MAX_SIZE,
+			PropsValues.CAS_LDAP_POOL_MAX_WAIT,
+			PropsValues.CAS_LDAP_POOL_MAX_IDLE_TIME * Time.SECOND,
+			PropsValues.CAS_LDAP_POOL_VALIDATE_ON_BORROW,
+			PropsValues.CAS_LDAP_POOL_ENABLED);
+
+		LDAPContextPool previousLDAPContextPool = _pools.putIfAbsent(
+			key, ldapContextPool);
+
+		if (previousLDAPContextPool != null) {
+			return previousLDAPContextPool;
+		}
+
+		return ldapContextPool;
+	}
+
+	public static Collection<LDAPContextPool> getPools() {
+		return _pools.values();
+	}
+
+	/**
+	 * Closes the pools of the company so that contexts are bound again with
+	 * the company's current LDAP settings.
+	 */
+	public static void reset(long companyId) {
+		String prefix = companyId + StringPool.POUND;
+
+		Iterator<String> itr = _pools.keySet().iterator();
+
+		while (itr.hasNext()) {
+			String key = itr.next();
+
+			if (key.startsWith(prefix)) {
+				LDAPContextPool ldapContextPool = _pools.remove(key);
+
+				if (ldapContextPool != null) {
+					ldapContextPool.close();
+				}
+			}
+		}
+	}
+
+	protected static String getKey(long ldapServerId, long companyId) {
+		return companyId + StringPool.POUND + ldapServerId;
+	}
+
+	private static ConcurrentMap<String, LDAPContextPool> _pools =
+		new ConcurrentHashMap<String, LDAPContextPool>();
+
+}
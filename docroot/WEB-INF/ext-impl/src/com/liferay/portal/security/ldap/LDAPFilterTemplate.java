@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LDAP search filter split once into literal text and placeholders. Filling
+ * in the template escapes every value as required by RFC 4515, so a principal
+ * containing filter syntax cannot change the meaning of the filter.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class LDAPFilterTemplate {
+
+	public static String escape(String value) {
+		StringBuilder sb = new StringBuilder(value.length() + 8);
+
+		escape(sb, value);
+
+		return sb.toString();
+	}
+
+	public LDAPFilterTemplate(String filter, String[] placeholders) {
+		List<String> literals = new ArrayList<String>();
+		List<Integer> placeholderIndexes = new ArrayList<Integer>();
+
+		int pos = 0;
+
+		while (true) {
+			int nextPos = -1;
+			int nextPlaceholderIndex = -1;
+
+			for (int i = 0; i < placeholders.length; i++) {
+				int x = filter.indexOf(placeholders[i], pos);
+
+				if ((x != -1) && ((nextPos == -1) || (x < nextPos))) {
+					nextPos = x;
+					nextPlaceholderIndex = i;
+				}
+			}
+
+			if (nextPos == -1) {
+				break;
+			}
+
+			literals.add(filter.substring(pos, nextPos));
+			placeholderIndexes.add(nextPlaceholderIndex);
+
+			pos = nextPos + placeholders[nextPlaceholderIndex].length();
+		}
+
+		literals.add(filter.substring(pos));
+
+		_filter = filter;
+		_literals = literals.toArray(new String[literals.size()]);
+		_placeholderIndexes = new int[placeholderIndexes.size()];
+
+		for (int i = 0; i < _placeholderIndexes.length; i++) {
+			_placeholderIndexes[i] = placeholderIndexes.get(i);
+		}
+
+		_length = filter.length();
+	}
+
+	/**
+	 * Returns the filter with each placeholder replaced by the escaped value
+	 * at the same index as the placeholder.
+	 */
+	public String fill(String... values) {
+		StringBuilder sb = new StringBuilder(_length + 32);
+
+		for (int i = 0; i < _placeholderIndexes.length; i++) {
+			sb.append(_literals[i]);
+
+			escape(sb, values[_placeholderIndexes[i]]);
+		}
+
+		sb.append(_literals[_literals.length - 1]);
+
+		return sb.toString();
+	}
+
+	public String toString() {
+		return _filter;
+	}
+
+	protected static void escape(StringBuilder sb, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			switch (c) {
+				case '\0':
+					sb.append("\\00");
+
+					break;
+
+				case '(':
+					sb.append("\\28");
+
+					break;
+
+				case ')':
+					sb.append("\\29");
+
+					break;
+
+				case '*':
+					sb.append("\\2a");
+
+					break;
+
+				case '\\':
+					sb.append("\\5c");
+
+					break;
+
+				default:
+					sb.append(c);
+			}
+		}
+	}
+
+	private String _filter;
+	private int _length;
+	private String[] _literals;
+	private int[] _placeholderIndexes;
+
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.ldap;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Observed health of one LDAP server of a company, built from the latency and
+ * outcome of real calls. Latency and error rate are exponentially weighted
+ * moving averages, so recent calls count the most. A server that fails
+ * <code>ejectionFailures</code> times in a row is ejected for
+ * <code>ejectionTime</code> milliseconds and stays ejected until a
+ * background probe succeeds.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class LDAPServerHealth {
+
+	public LDAPServerHealth(
+		long ldapServerId, long companyId, int ejectionFailures,
+		long ejectionTime) {
+
+		_ldapServerId = ldapServerId;
+		_companyId = companyId;
+		_ejectionFailures = ejectionFailures;
+		_ejectionTime = ejectionTime;
+	}
+
+	public long getCompanyId() {
+		return _companyId;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return _consecutiveFailures;
+	}
+
+	public synchronized double getErrorRate() {
+		return _errorRate;
+	}
+
+	public synchronized double getLatency() {
+		return _latency;
+	}
+
+	public long getLdapServerId() {
+		return _ldapServerId;
+	}
+
+	/**
+	 * Returns a score where lower is healthier, the latency weighted by the
+	 * error rate. Servers that have not been called yet score 0 so that they
+	 * get tried.
+	 */
+	public synchronized double getScore() {
+		return _latency * (1 + (_ERROR_RATE_WEIGHT * _errorRate));
+	}
+
+	public synchronized boolean isEjected() {
+		if (_ejectedUntil > 0) {
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns <code>true</code> if the server is ejected, its ejection time is
+	 * over, and no other probe is running. Callers must report the outcome of
+	 * the probe with {@link #recordProbe(boolean)}.
+	 */
+	public boolean isProbeDue() {
+		synchronized (this) {
+			if ((_ejectedUntil == 0) ||
+				(_ejectedUntil > System.currentTimeMillis())) {
+
+				return false;
+			}
+		}
+
+		return _probing.compareAndSet(false, true);
+	}
+
+	public synchronized void recordFailure(long latency) {
+		update(latency, 1);
+
+		_consecutiveFailures++;
+
+		if ((_consecutiveFailures >= _ejectionFailures) &&
+			(_ejectedUntil == 0)) {
+
+			_ejectedUntil = System.currentTimeMillis() + _ejectionTime;
+		}
+	}
+
+	public void recordProbe(boolean success) {
+		synchronized (this) {
+			if (success) {
+				_consecutiveFailures = 0;
+				_ejectedUntil = 0;
+			}
+			else {
+				_ejectedUntil = System.currentTimeMillis() + _ejectionTime;
+			}
+		}
+
+		_probing.set(false);
+	}
+
+	public synchronized void recordSuccess(long latency) {
+		update(latency, 0);
+
+		_consecutiveFailures = 0;
+	}
+
+	protected void update(long latency, int error) {
+		if (_latency == 0) {
+			_latency = latency;
+		}
+		else {
+			_latency += _ALPHA * (latency - _latency);
+		}
+
+		_errorRate += _ALPHA * (error - _errorRate);
+	}
+
+	private static final double _ALPHA = 0.2;
+
+	private static final double _ERROR_RATE_WEIGHT = 10;
+
+	private long _companyId;
+	private int _consecutiveFailures;
+	private long _ejectedUntil;
+	private int _ejectionFailures;
+	private long _ejectionTime;
+	private double _errorRate;
+	private double _latency;
+	private long _ldapServerId;
+	private AtomicBoolean _probing = new AtomicBoolean();
+
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.ldap;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.StringPool;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.security.auth.CASExecutorUtil;
+import com.liferay.portal.util.PropsValues;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Tracks the health of the LDAP servers used by the CAS LDAP import. Servers
+ * that keep failing are ejected and left out of the servers to search until a
+ * background probe binds to them successfully. Servers searched one after the
+ * other are tried healthiest first, servers searched in parallel keep their
+ * configured order since that order decides which match wins.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class LDAPServerHealthUtil {
+
+	public static LDAPServerHealth getHealth(long ldapServerId, long companyId) {
+		String key = companyId + StringPool.POUND + ldapServerId;
+
+		LDAPServerHealth ldapServerHealth = _healths.get(key);
+
+		if (ldapServerHealth != null) {
+			return ldapServerHealth;
+		}
+
+		ldapServerHealth = new LDAPServerHealth(
+			ldapServerId, companyId,
+			PropsValues.CAS_LDAP_HEALTH_EJECTION_FAILURES,
+			PropsValues.CAS_LDAP_HEALTH_EJECTION_TIME * Time.SECOND);
+
+		LDAPServerHealth previousLDAPServerHealth = _healths.putIfAbsent(
+			key, ldapServerHealth);
+
+		if (previousLDAPServerHealth != null) {
+			return previousLDAPServerHealth;
+		}
+
+		return ldapServerHealth;
+	}
+
+	public static Collection<LDAPServerHealth> getHealths() {
+		return _healths.values();
+	}
+
+	/**
+	 * Returns the servers that are not ejected, in their configured order.
+	 */
+	public static long[] getAvailableServerIds(
+		long companyId, long[] ldapServerIds) {
+
+		if (!PropsValues.CAS_LDAP_HEALTH_ENABLED) {
+			return ldapServerIds;
+		}
+
+		List<Long> availableServerIds = new ArrayList<Long>(
+			ldapServerIds.length);
+
+		for (long ldapServerId : ldapServerIds) {
+			LDAPServerHealth ldapServerHealth = getHealth(
+				ldapServerId, companyId);
+
+			if (ldapServerHealth.isProbeDue()) {
+				probe(ldapServerHealth);
+			}
+
+			if (!ldapServerHealth.isEjected()) {
+				availableServerIds.add(ldapServerId);
+			}
+		}
+
+		long[] availableServerIdsArray = new long[availableServerIds.size()];
+
+		for (int i = 0; i < availableServerIdsArray.length; i++) {
+			availableServerIdsArray[i] = availableServerIds.get(i);
+		}
+
+		return availableServerIdsArray;
+	}
+
+	/**
+	 * Returns the servers that are not ejected, healthiest first by their
+	 * moving average latency and error rate. Servers with the same score keep
+	 * their configured order.
+	 */
+	public static long[] getOrderedServerIds(
+		long companyId, long[] ldapServerIds) {
+
+		long[] availableServerIds = getAvailableServerIds(
+			companyId, ldapServerIds);
+
+		if (!PropsValues.CAS_LDAP_HEALTH_ENABLED ||
+			(availableServerIds.length <= 1)) {
+
+			return availableServerIds;
+		}
+
+		List<LDAPServerHealth> ldapServerHealths =
+			new ArrayList<LDAPServerHealth>(availableServerIds.length);
+
+		for (long ldapServerId : availableServerIds) {
+			ldapServerHealths.add(getHealth(ldapServerId, companyId));
+		}
+
+		// The sort is stable, so ties keep the configured order
+
+		Collections.sort(ldapServerHealths, _scoreComparator);
+
+		long[] orderedServerIds = new long[ldapServerHealths.size()];
+
+		for (int i = 0; i < orderedServerIds.length; i++) {
+			orderedServerIds[i] = ldapServerHealths.get(i).getLdapServerId();
+		}
+
+		return orderedServerIds;
+	}
+
+	public static void recordFailure(
+		long ldapServerId, long companyId, long latency) {
+
+		if (!PropsValues.CAS_LDAP_HEALTH_ENABLED) {
+			return;
+		}
+
+		LDAPServerHealth ldapServerHealth = getHealth(ldapServerId, companyId);
+
+		boolean ejected = ldapServerHealth.isEjected();
+
+		ldapServerHealth.recordFailure(latency);
+
+		if (!ejected && ldapServerHealth.isEjected() &&
+			_log.isWarnEnabled()) {
+
+			_log.warn(
+				"Ejecting LDAP server " + ldapServerId + " of company " +
+					companyId + " after " +
+						ldapServerHealth.getConsecutiveFailures() +
+							" consecutive failures");
+		}
+	}
+
+	public static void recordSuccess(
+		long ldapServerId, long companyId, long latency) {
+
+		if (!PropsValues.CAS_LDAP_HEALTH_ENABLED) {
+			return;
+		}
+
+		getHealth(ldapServerId, companyId).recordSuccess(latency);
+	}
+
+	protected static void probe(final LDAPServerHealth ldapServerHealth) {
+		Runnable runnable = new Runnable() {
+
+			public void run() {
+				boolean success = false;
+
+				try {
+					LdapContext ldapContext = PortalLDAPUtil.getContext(
+						ldapServerHealth.getLdapServerId(),
+						ldapServerHealth.getCompanyId());
+
+					if (ldapContext != null) {
+						ldapContext.close();
+
+						success = true;
+					}
+				}
+				catch (Exception e) {
+					if (_log.isDebugEnabled()) {
+						_log.debug(e, e);
+					}
+				}
+
+				ldapServerHealth.recordProbe(success);
+
+				if (success && _log.isInfoEnabled()) {
+					_log.info(
+						"LDAP server " + ldapServerHealth.getLdapServerId() +
+							" of company " + ldapServerHealth.getCompanyId() +
+								" is back");
+				}
+			}
+
+		};
+
+		if (!CASExecutorUtil.execute(runnable)) {
+			ldapServerHealth.recordProbe(false);
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(LDAPServerHealthUtil.class);
+
+	private static ConcurrentMap<String, LDAPServerHealth> _healths =
+		new ConcurrentHashMap<String, LDAPServerHealth>();
+	private static Comparator<LDAPServerHealth> _scoreComparator =
+		new Comparator<LDAPServerHealth>() {
+
+			public int compare(
+				LDAPServerHealth ldapServerHealth1,
+				LDAPServerHealth ldapServerHealth2) {
+
+				return Double.compare(
+					ldapServerHealth1.getScore(), ldapServerHealth2.getScore());
+			}
+
+		};
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.ldap;
+
+import com.liferay.portal.kernel.exception.SystemException;
+import com.liferay.portal.kernel.util.GetterUtil;
+import com.liferay.portal.kernel.util.PropsKeys;
+import com.liferay.portal.kernel.util.Validator;
+import com.liferay.portal.util.PrefsPropsUtil;
+
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.naming.directory.SearchControls;
+
+/**
+ * Settings of one LDAP server of a company that the CAS LDAP import needs for
+ * every login, read once from the portal preferences. The search controls
+ * are shared and must not be modified.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class LDAPServerProfile {
+
+	public static final String[] AUTH_SEARCH_FILTER_PLACEHOLDERS = {
+		"@company_id@", "@email_address@", "@screen_name@"
+	};
+
+	public LDAPServerProfile(long ldapServerId, long companyId)
+		throws Exception {
+
+		_ldapServerId = ldapServerId;
+		_companyId = companyId;
+
+		String postfix = LDAPSettingsUtil.getPropertyPostfix(ldapServerId);
+
+		_baseDN = PrefsPropsUtil.getString(
+			companyId, PropsKeys.LDAP_BASE_DN + postfix);
+
+		String authSearchFilter = PrefsPropsUtil.getString(
+			companyId, PropsKeys.LDAP_AUTH_SEARCH_FILTER + postfix);
+
+		if (Validator.isNull(authSearchFilter)) {
+			throw new SystemException(
+				"No authentication search filter is set for LDAP server " +
+					ldapServerId);
+		}
+
+		_authSearchFilterTemplate = new LDAPFilterTemplate(
+			authSearchFilter, AUTH_SEARCH_FILTER_PLACEHOLDERS);
+
+		_userMappings = LDAPSettingsUtil.getUserMappings(
+			ldapServerId, companyId);
+
+		// Request every attribute PortalLDAPUtil.getUserAttributes would, the
+		// importer reads contact and custom fields from the same result
+
+		Properties contactMappings = LDAPSettingsUtil.getContactMappings(
+			ldapServerId, companyId);
+		Properties contactExpandoMappings =
+			LDAPSettingsUtil.getContactExpandoMappings(ldapServerId, companyId);
+		Properties groupMappings = LDAPSettingsUtil.getGroupMappings(
+			ldapServerId, companyId);
+		Properties userExpandoMappings =
+			LDAPSettingsUtil.getUserExpandoMappings(ldapServerId, companyId);
+
+		Set<String> attributeIds = new LinkedHashSet<String>();
+
+		addAttributeIds(attributeIds, _userMappings);
+		addAttributeIds(attributeIds, userExpandoMappings);
+		addAttributeIds(attributeIds, contactMappings);
+		addAttributeIds(attributeIds, contactExpandoMappings);
+		addAttributeIds(attributeIds, groupMappings);
+
+		_userSearchControls = new SearchControls(
+			SearchControls.SUBTREE_SCOPE, 1, 0,
+			attributeIds.toArray(new String[attributeIds.size()]), false,
+			false);
+	}
+
+	public String getAuthSearchFilter(
+		String emailAddress, String screenName) {
+
+		return _authSearchFilterTemplate.fill(
+			String.valueOf(_companyId), emailAddress, screenName);
+	}
+
+	public LDAPFilterTemplate getAuthSearchFilterTemplate() {
+		return _authSearchFilterTemplate;
+	}
+
+	public String getBaseDN() {
+		return _baseDN;
+	}
+
+	public long getCompanyId() {
+		return _companyId;
+	}
+
+	public long getLdapServerId() {
+		return _ldapServerId;
+	}
+
+	public Properties getUserMappings() {
+		return _userMappings;
+	}
+
+	public SearchControls getUserSearchControls() {
+		return _userSearchControls;
+	}
+
+	protected void addAttributeIds(
+		Set<String> attributeIds, Properties mappings) {
+
+		for (Object value : mappings.values()) {
+			String attributeId = GetterUtil.getString((String)value);
+
+			if (Validator.isNotNull(attributeId)) {
+				attributeIds.add(attributeId.toLowerCase());
+			}
+		}
+	}
+
+	private LDAPFilterTemplate _authSearchFilterTemplate;
+	private String _baseDN;
+	private long _companyId;
+	private long _ldapServerId;
+	private Properties _userMappings;
+	private SearchControls _userSearchControls;
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.ldap;
+
+import com.liferay.portal.kernel.util.StringPool;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches one {@link LDAPServerProfile} per company and LDAP server until the
+ * company's portal preferences change.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class LDAPServerProfileUtil {
+
+	public static LDAPServerProfile getProfile(
+			long ldapServerId, long companyId)
+		throws Exception {
+
+		String key = getKey(ldapServerId, companyId);
+
+		LDAPServerProfile ldapServerProfile = _profiles.get(key);
+
+		if (ldapServerProfile == null) {
+			ldapServerProfile = new LDAPServerProfile(ldapServerId, companyId);
+
+			_profiles.put(key, ldapServerProfile);
+		}
+
+		return ldapServerProfile;
+	}
+
+	public static void reset(long companyId) {
+		String prefix = companyId + StringPool.POUND;
+
+		Iterator<String> itr = _profiles.keySet().iterator();
+
+		while (itr.hasNext()) {
+			String key = itr.next();
+
+			if (key.startsWith(prefix)) {
+				itr.remove();
+			}
+		}
+	}
+
+	protected static String getKey(long ldapServerId, long companyId) {
+		return companyId + StringPool.POUND + ldapServerId;
+	}
+
+	private static ConcurrentMap<String, LDAPServerProfile> _profiles =
+		new ConcurrentHashMap<String, LDAPServerProfile>();
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.servlet.filters.sso.cas;
+
+import com.liferay.portal.kernel.util.GetterUtil;
+import com.liferay.portal.kernel.util.InstanceFactory;
+import com.liferay.portal.kernel.util.Validator;
+import com.liferay.portal.security.auth.CAS3ServiceTicketValidator;
+import com.liferay.portal.security.auth.CASCircuitBreakerTicketValidator;
+import com.liferay.portal.security.auth.CASCompactAssertion;
+import com.liferay.portal.security.auth.CASHttpUtil;
+import com.liferay.portal.security.auth.CASProxyGrantingTicketStorage;
+import com.liferay.portal.security.auth.CASProxyRetriever;
+import com.liferay.portal.util.PropsValues;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.jasig.cas.client.proxy.ProxyGrantingTicketStorage;
+import org.jasig.cas.client.validation.Assertion;
+import org.jasig.cas.client.validation.Cas20ProxyReceivingTicketValidationFilter;
+import org.jasig.cas.client.validation.Cas20ProxyTicketValidator;
+import org.jasig.cas.client.validation.Cas20ServiceTicketValidator;
+import org.jasig.cas.client.validation.TicketValidator;
+
+/**
+ * Jasig validation filter that validates service tickets with {@link
+ * CAS3ServiceTicketValidator} and requests proxy tickets through the pooled
+ * {@link CASProxyRetriever}. Filters configured with
+ * <code>acceptAnyProxy</code> or <code>allowedProxyChains</code> keep the
+ * stock proxy ticket validator. Validation is guarded by the
+ * <code>cas.serviceValidate</code> or <code>cas.proxyValidate</code> circuit
+ * breaker and gives up after <code>cas.back.channel.time.budget</code>
+ * milliseconds. Proxy granting tickets are kept in {@link
+ * CASProxyGrantingTicketStorage} unless the
+ * <code>proxyGrantingTicketStorageClass</code> init parameter names another
+ * storage.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CAS3ProxyReceivingTicketValidationFilter
+	extends Cas20ProxyReceivingTicketValidationFilter {
+
+	protected TicketValidator getCAS3TicketValidator(FilterConfig filterConfig) {
+		String casServerUrlPrefix = getPropertyFromInitParams(
+			filterConfig, "casServerUrlPrefix", null);
+
+		Cas20ServiceTicketValidator cas20ServiceTicketValidator = null;
+
+		if (Validator.isNull(
+				getPropertyFromInitParams(
+					filterConfig, "acceptAnyProxy", null)) &&
+			Validator.isNull(
+				getPropertyFromInitParams(
+					filterConfig, "allowedProxyChains", null))) {
+
+			cas20ServiceTicketValidator = new CAS3ServiceTicketValidator(
+				casServerUrlPrefix);
+
+			cas20ServiceTicketValidator.setEncoding(
+				getPropertyFromInitParams(filterConfig, "encoding", null));
+			cas20ServiceTicketValidator.setProxyCallbackUrl(
+				getPropertyFromInitParams(
+					filterConfig, "proxyCallbackUrl", null));
+			cas20ServiceTicketValidator.setRenew(
+				GetterUtil.getBoolean(
+					getPropertyFromInitParams(filterConfig, "renew", null)));
+		}
+		else {
+			cas20ServiceTicketValidator =
+				(Cas20ServiceTicketValidator)getTicketValidator(filterConfig);
+		}
+
+		cas20ServiceTicketValidator.setProxyGrantingTicketStorage(
+			_proxyGrantingTicketStorage);
+		cas20ServiceTicketValidator.setProxyRetriever(
+			new CASProxyRetriever(casServerUrlPrefix));
+
+		return cas20ServiceTicketValidator;
+	}
+
+	protected ProxyGrantingTicketStorage getProxyGrantingTicketStorage(
+			FilterConfig filterConfig)
+		throws ServletException {
+
+		String proxyGrantingTicketStorageClass = getPropertyFromInitParams(
+			filterConfig, "proxyGrantingTicketStorageClass", null);
+
+		if (Validator.isNull(proxyGrantingTicketStorageClass)) {
+			return new CASProxyGrantingTicketStorage();
+		}
+
+		try {
+			return (ProxyGrantingTicketStorage)InstanceFactory.newInstance(
+				proxyGrantingTicketStorageClass);
+		}
+		catch (Exception e) {
+			throw new ServletException(e);
+		}
+	}
+
+	protected void initInternal(FilterConfig filterConfig)
+		throws ServletException {
+
+		super.initInternal(filterConfig);
+
+		// The Jasig filter keeps its storage private, so hold on to our own
+		// instance and hand it to both the filter and the validator
+
+		_casServerUrlPrefix = getPropertyFromInitParams(
+			filterConfig, "casServerUrlPrefix", null);
+		_proxyGrantingTicketStorage = getProxyGrantingTicketStorage(
+			filterConfig);
+
+		setProxyGrantingTicketStorage(_proxyGrantingTicketStorage);
+
+		TicketValidator ticketValidator = getCAS3TicketValidator(filterConfig);
+
+		String endpoint = "serviceValidate";
+
+		if (ticketValidator instanceof Cas20ProxyTicketValidator) {
+			endpoint = "proxyValidate";
+		}
+
+		setTicketValidator(
+			new CASCircuitBreakerTicketValidator(
+				ticketValidator, CASHttpUtil.getCircuitBreaker(endpoint),
+				PropsValues.CAS_BACK_CHANNEL_TIME_BUDGET));
+	}
+
+	/**
+	 * Replaces the assertion the Jasig filter just stored in the session with
+	 * a {@link CASCompactAssertion} if compact sessions are enabled.
+	 */
+	protected void onSuccessfulValidation(
+		HttpServletRequest request, HttpServletResponse response,
+		Assertion assertion) {
+
+		if (!PropsValues.CAS_SESSION_COMPACT_ENABLED) {
+			return;
+		}
+
+		HttpSession session = request.getSession(false);
+
+		if ((session == null) ||
+			(session.getAttribute(CONST_CAS_ASSERTION) != assertion)) {
+
+			return;
+		}
+
+		Assertion compactAssertion = CASCompactAssertion.compact(
+			assertion, _casServerUrlPrefix,
+			PropsValues.CAS_SESSION_COMPACT_ATTRIBUTES);
+
+		request.setAttribute(CONST_CAS_ASSERTION, compactAssertion);
+		session.setAttribute(CONST_CAS_ASSERTION, compactAssertion);
+	}
+
+	private String _casServerUrlPrefix;
+	private ProxyGrantingTicketStorage _proxyGrantingTicketStorage;
+
+}
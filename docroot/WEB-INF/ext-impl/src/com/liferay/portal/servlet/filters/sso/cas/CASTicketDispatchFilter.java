@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.servlet.filters.sso.cas;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.servlet.HttpMethods;
+import com.liferay.portal.kernel.util.InstanceFactory;
+import com.liferay.portal.kernel.util.Validator;
+import com.liferay.portal.security.auth.CASBulkhead;
+import com.liferay.portal.util.PropsValues;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Lightweight filter in front of the CAS validation filter. The validation
+ * filter is mapped to every request but only has work to do for requests
+ * that carry a service ticket or hit the proxy callback, so other requests,
+ * such as static resources and pollers, are passed straight down the chain
+ * after a scan of the raw query string. POST requests without a ticket in the
+ * query string are also checked for a ticket in the form parameters, since
+ * the validation filter accepts those as well.
+ *
+ * <p>
+ * If <code>cas.validation.max.concurrent</code> is set, at most that many
+ * requests wait on the CAS server for a ticket validation at once, so that a
+ * login storm cannot take every container thread away from other traffic.
+ * Requests that do not get to validate within
+ * <code>cas.validation.max.wait</code> milliseconds are answered with a 503
+ * and a <code>Retry-After</code> header, which fails those logins.
+ * </p>
+ *
+ * <p>
+ * The init parameters are handed to the validation filter, which is {@link
+ * CAS3ProxyReceivingTicketValidationFilter} unless the
+ * <code>validationFilterClass</code> init parameter names another filter.
+ * The <code>artifactParameterName</code> and <code>proxyReceptorUrl</code>
+ * init parameters of the validation filter also tell this filter which
+ * requests to hand over.
+ * </p>
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASTicketDispatchFilter implements Filter {
+
+	public void destroy() {
+		_validationFilter.destroy();
+	}
+
+	public void doFilter(
+			ServletRequest servletRequest, ServletResponse servletResponse,
+			FilterChain filterChain)
+		throws IOException, ServletException {
+
+		HttpServletRequest request = (HttpServletRequest)servletRequest;
+
+		// Proxy callbacks complete validations that are waiting for them and
+		// are never held back
+
+		if (isProxyReceptor(request)) {
+			_validationFilter.doFilter(
+				servletRequest, servletResponse, filterChain);
+
+			return;
+		}
+
+		if (!hasTicket(request)) {
+			filterChain.doFilter(servletRequest, servletResponse);
+
+			return;
+		}
+
+		if (_validationBulkhead == null) {
+			_validationFilter.doFilter(
+				servletRequest, servletResponse, filterChain);
+
+			return;
+		}
+
+		if (!_validationBulkhead.tryAcquire()) {
+			if (_log.isDebugEnabled()) {
+				_log.debug(
+					"Too many concurrent ticket validations, rejecting " +
+						request.getRequestURI());
+			}
+
+			HttpServletResponse response =
+				(HttpServletResponse)servletResponse;
+
+			response.setHeader("Retry-After", "1");
+
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+
+			return;
+		}
+
+		ValidationFilterChain validationFilterChain =
+			new ValidationFilterChain(filterChain);
+
+		try {
+			_validationFilter.doFilter(
+				servletRequest, servletResponse, validationFilterChain);
+		}
+		finally {
+			validationFilterChain.release();
+		}
+	}
+
+	public void init(FilterConfig filterConfig) throws ServletException {
+		_artifactParameterName = getInitParameter(
+			filterConfig, "artifactParameterName", "ticket");
+		_proxyReceptorUrl = getInitParameter(
+			filterConfig, "proxyReceptorUrl", null);
+
+		String validationFilterClass = getInitParameter(
+			filterConfig, "validationFilterClass",
+			CAS3ProxyReceivingTicketValidationFilter.class.getName());
+
+		try {
+			_validationFilter = (Filter)InstanceFactory.newInstance(
+				validationFilterClass);
+		}
+		catch (Exception e) {
+			throw new ServletException(e);
+		}
+
+		_validationFilter.init(filterConfig);
+
+		if (PropsValues.CAS_VALIDATION_MAX_CONCURRENT > 0) {
+			_validationBulkhead = new CASBulkhead(
+				"validation", PropsValues.CAS_VALIDATION_MAX_CONCURRENT,
+				PropsValues.CAS_VALIDATION_MAX_WAIT);
+		}
+	}
+
+	protected String getInitParameter(
+		FilterConfig filterConfig, String name, String defaultValue) {
+
+		String value = filterConfig.getInitParameter(name);
+
+		if (Validator.isNull(value)) {
+			return defaultValue;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Returns <code>true</code> if the request has the ticket parameter. Only
+	 * POST requests have their parameters read, which parses a form body the
+	 * same way the validation filter would have.
+	 */
+	protected boolean hasTicket(HttpServletRequest request) {
+		if (hasTicket(request.getQueryString())) {
+			return true;
+		}
+
+		if (HttpMethods.POST.equals(request.getMethod()) &&
+			Validator.isNotNull(
+				request.getParameter(_artifactParameterName))) {
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns <code>true</code> if the query string has the ticket parameter.
+	 * The query string is scanned in place without decoding or splitting it.
+	 */
+	protected boolean hasTicket(String queryString) {
+		if (queryString == null) {
+			return false;
+		}
+
+		int length = _artifactParameterName.length();
+
+		int pos = queryString.indexOf(_artifactParameterName);
+
+		while (pos >= 0) {
+			int end = pos + length;
+
+			if (((pos == 0) || (queryString.charAt(pos - 1) == '&')) &&
+				(end < queryString.length()) &&
+				(queryString.charAt(end) == '=')) {
+
+				return true;
+			}
+
+			pos = queryString.indexOf(_artifactParameterName, end);
+		}
+
+		return false;
+	}
+
+	protected boolean isProxyReceptor(HttpServletRequest request) {
+		if (_proxyReceptorUrl == null) {
+			return false;
+		}
+
+		String requestURI = request.getRequestURI();
+
+		if ((requestURI != null) && requestURI.endsWith(_proxyReceptorUrl)) {
+			return true;
+		}
+
+		return false;
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(
+		CASTicketDispatchFilter.class);
+
+	private String _artifactParameterName;
+	private String _proxyReceptorUrl;
+	private CASBulkhead _validationBulkhead;
+	private Filter _validationFilter;
+
+	/**
+	 * Releases the validation permit as soon as the validation filter passes
+	 * the request down the chain, so that rendering the page does not count
+	 * against the limit.
+	 */
+	private class ValidationFilterChain implements FilterChain {
+
+		public ValidationFilterChain(FilterChain filterChain) {
+			_filterChain = filterChain;
+		}
+
+		public void doFilter(
+				ServletRequest servletRequest, ServletResponse servletResponse)
+			throws IOException, ServletException {
+
+			release();
+
+			_filterChain.doFilter(servletRequest, servletResponse);
+		}
+
+		public void release() {
+			if (!_released) {
+				_released = true;
+
+				_validationBulkhead.release();
+			}
+		}
+
+		private FilterChain _filterChain;
+		private boolean _released;
+
+	}
+
+}
@@ -187,14 +187,76 @@ public class PropsValues {
 
 	public static final int CAPTCHA_MAX_CHALLENGES = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAPTCHA_MAX_CHALLENGES));
 
+	public static final String[] CAS_ASSERTION_USER_MAPPINGS = PropsUtil.getArray(PropsKeys.CAS_ASSERTION_USER_MAPPINGS);
+
 	public static final boolean CAS_AUTH_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_AUTH_ENABLED));
 
+	public static final boolean CAS_BACK_CHANNEL_CIRCUIT_BREAKER_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_BACK_CHANNEL_CIRCUIT_BREAKER_ENABLED));
+
+	public static final int CAS_BACK_CHANNEL_CIRCUIT_BREAKER_FAILURE_THRESHOLD = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_BACK_CHANNEL_CIRCUIT_BREAKER_FAILURE_THRESHOLD));
+
+	public static final long CAS_BACK_CHANNEL_CIRCUIT_BREAKER_OPEN_TIME = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_BACK_CHANNEL_CIRCUIT_BREAKER_OPEN_TIME));
+
+	public static final long CAS_BACK_CHANNEL_TIME_BUDGET = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_BACK_CHANNEL_TIME_BUDGET));
+
+	public static final boolean CAS_IMPORT_FROM_ASSERTION = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_IMPORT_FROM_ASSERTION));
+
 	public static final boolean CAS_IMPORT_FROM_LDAP = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_IMPORT_FROM_LDAP));
 
+	public static final int CAS_LDAP_BULKHEAD_MAX_CONCURRENT = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_LDAP_BULKHEAD_MAX_CONCURRENT));
+
+	public static final long CAS_LDAP_BULKHEAD_MAX_WAIT = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_LDAP_BULKHEAD_MAX_WAIT));
+
+	public static final boolean CAS_LDAP_CIRCUIT_BREAKER_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_LDAP_CIRCUIT_BREAKER_ENABLED));
+
+	public static final int CAS_LDAP_CIRCUIT_BREAKER_FAILURE_THRESHOLD = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_LDAP_CIRCUIT_BREAKER_FAILURE_THRESHOLD));
+
+	public static final long CAS_LDAP_CIRCUIT_BREAKER_OPEN_TIME = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_LDAP_CIRCUIT_BREAKER_OPEN_TIME));
+
+	public static final int CAS_LDAP_HEALTH_EJECTION_FAILURES = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_LDAP_HEALTH_EJECTION_FAILURES));
+
+	public static final long CAS_LDAP_HEALTH_EJECTION_TIME = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_LDAP_HEALTH_EJECTION_TIME));
+
+	public static final boolean CAS_LDAP_HEALTH_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_LDAP_HEALTH_ENABLED));
+
+	public static final boolean CAS_LDAP_NEGATIVE_CACHE_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_LDAP_NEGATIVE_CACHE_ENABLED));
+
+	public static final int CAS_LDAP_NEGATIVE_CACHE_MAX_SIZE = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_LDAP_NEGATIVE_CACHE_MAX_SIZE));
+
+	public static final long CAS_LDAP_NEGATIVE_CACHE_TIME_TO_LIVE = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_LDAP_NEGATIVE_CACHE_TIME_TO_LIVE));
+
+	public static final boolean CAS_LDAP_POOL_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_LDAP_POOL_ENABLED));
+
+	public static final long CAS_LDAP_POOL_MAX_IDLE_TIME = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_LDAP_POOL_MAX_IDLE_TIME));
+
+	public static final int CAS_LDAP_POOL_MAX_SIZE = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_LDAP_POOL_MAX_SIZE));
+
+	public static final long CAS_LDAP_POOL_MAX_WAIT = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_LDAP_POOL_MAX_WAIT));
+
+	public static final boolean CAS_LDAP_POOL_VALIDATE_ON_BORROW = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_LDAP_POOL_VALIDATE_ON_BORROW));
+
+	public static final boolean CAS_LDAP_SEARCH_PARALLEL = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_LDAP_SEARCH_PARALLEL));
+
+	public static final long CAS_LDAP_SEARCH_TIMEOUT = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_LDAP_SEARCH_TIMEOUT));
+
+	public static final boolean CAS_LDAP_SKIP_UNCHANGED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_LDAP_SKIP_UNCHANGED));
+
+	public static final long CAS_LDAP_SYNC_INTERVAL = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_LDAP_SYNC_INTERVAL));
+
+	public static final int CAS_LDAP_SYNC_MAX_SIZE = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_LDAP_SYNC_MAX_SIZE));
+
 	public static final String CAS_LOGIN_URL = PropsUtil.get(PropsKeys.CAS_LOGIN_URL);
 
 	public static final String CAS_LOGOUT_URL = PropsUtil.get(PropsKeys.CAS_LOGOUT_URL);
 
+	public static final String CAS_MEMBERSHIP_ATTRIBUTE = PropsUtil.get(PropsKeys.CAS_MEMBERSHIP_ATTRIBUTE);
+
+	public static final String[] CAS_MEMBERSHIP_ROLE_NAMES = PropsUtil.getArray(PropsKeys.CAS_MEMBERSHIP_ROLE_NAMES);
+
+	public static final boolean CAS_MEMBERSHIP_SYNC_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_MEMBERSHIP_SYNC_ENABLED));
+
+	public static final String[] CAS_MEMBERSHIP_USER_GROUP_NAMES = PropsUtil.getArray(PropsKeys.CAS_MEMBERSHIP_USER_GROUP_NAMES);
+
 	public static final String CAS_SERVER_NAME = PropsUtil.get(PropsKeys.CAS_SERVER_NAME);
 
 	public static final String CAS_SERVER_URL = PropsUtil.get(PropsKeys.CAS_SERVER_URL);
@@ -207,6 +269,46 @@ public class PropsValues {
 
 	public static final boolean CAS_CLEARPASS_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_CLEARPASS_ENABLED));
 
+	public static final boolean CAS_CLEARPASS_LAZY = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_CLEARPASS_LAZY));
+
+	public static final int CAS_EXECUTOR_POOL_SIZE = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_EXECUTOR_POOL_SIZE));
+
+	public static final int CAS_EXECUTOR_QUEUE_SIZE = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_EXECUTOR_QUEUE_SIZE));
+
+	public static final int CAS_HTTP_CONNECTION_TIMEOUT = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_HTTP_CONNECTION_TIMEOUT));
+
+	public static final int CAS_HTTP_MAX_CONNECTIONS_PER_HOST = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_HTTP_MAX_CONNECTIONS_PER_HOST));
+
+	public static final int CAS_HTTP_MAX_TOTAL_CONNECTIONS = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_HTTP_MAX_TOTAL_CONNECTIONS));
+
+	public static final int CAS_HTTP_SO_TIMEOUT = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_HTTP_SO_TIMEOUT));
+
+	public static final long CAS_PROXY_GRANTING_TICKET_CLEAN_UP_INTERVAL = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_PROXY_GRANTING_TICKET_CLEAN_UP_INTERVAL));
+
+	public static final int CAS_PROXY_GRANTING_TICKET_MAX_SIZE = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_PROXY_GRANTING_TICKET_MAX_SIZE));
+
+	public static final long CAS_PROXY_GRANTING_TICKET_TIME_TO_LIVE = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_PROXY_GRANTING_TICKET_TIME_TO_LIVE));
+
+	public static final String[] CAS_SESSION_COMPACT_ATTRIBUTES = PropsUtil.getArray(PropsKeys.CAS_SESSION_COMPACT_ATTRIBUTES);
+
+	public static final boolean CAS_SESSION_COMPACT_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_SESSION_COMPACT_ENABLED));
+
+	public static final long CAS_SETTINGS_TIME_TO_LIVE = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_SETTINGS_TIME_TO_LIVE));
+
+	public static final boolean CAS_USER_CACHE_ENABLED = GetterUtil.getBoolean(PropsUtil.get(PropsKeys.CAS_USER_CACHE_ENABLED));
+
+	public static final int CAS_USER_CACHE_MAX_SIZE = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_USER_CACHE_MAX_SIZE));
+
+	public static final long CAS_USER_CACHE_REFRESH_AHEAD = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_USER_CACHE_REFRESH_AHEAD));
+
+	public static final long CAS_USER_CACHE_TIME_TO_LIVE = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_USER_CACHE_TIME_TO_LIVE));
+
+	public static final int CAS_VALIDATION_EXECUTOR_MAX_SIZE = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_VALIDATION_EXECUTOR_MAX_SIZE));
+
+	public static final int CAS_VALIDATION_MAX_CONCURRENT = GetterUtil.getInteger(PropsUtil.get(PropsKeys.CAS_VALIDATION_MAX_CONCURRENT));
+
+	public static final long CAS_VALIDATION_MAX_WAIT = GetterUtil.getLong(PropsUtil.get(PropsKeys.CAS_VALIDATION_MAX_WAIT));
+
 	public static final String CDN_HOST_HTTP = PropsUtil.get(PropsKeys.CDN_HOST_HTTP);
 
 	public static final String CDN_HOST_HTTPS = PropsUtil.get(PropsKeys.CDN_HOST_HTTPS);
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.dao.db.DBFactoryImpl;
+import com.liferay.portal.kernel.dao.db.DB;
+import com.liferay.portal.kernel.dao.db.DBFactoryUtil;
+import com.liferay.portal.kernel.test.TestCase;
+import com.liferay.portal.kernel.util.InfrastructureUtil;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.hsqldb.jdbc.jdbcDataSource;
+
+/**
+ * Runs two storages against one embedded HSQL database, the way two cluster
+ * nodes share the portal database. The database is set up as the portal data
+ * source, so the storages create the table and get their connections the
+ * same way they do in the portal.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASDBProxyGrantingTicketStorageTest extends TestCase {
+
+	public void setUp() throws Exception {
+		_dataSource = new jdbcDataSource();
+
+		_dataSource.setDatabase("jdbc:hsqldb:mem:cas");
+		_dataSource.setUser("sa");
+		_dataSource.setPassword("");
+
+		InfrastructureUtil infrastructureUtil = new InfrastructureUtil();
+
+		infrastructureUtil.setDataSource(_dataSource);
+
+		DBFactoryUtil dbFactoryUtil = new DBFactoryUtil();
+
+		dbFactoryUtil.setDBFactory(new DBFactoryImpl());
+
+		DBFactoryUtil.setDB(DB.TYPE_HYPERSONIC);
+	}
+
+	public void tearDown() throws Exception {
+		runSQL("drop table CAS_ProxyGrantingTicket if exists");
+	}
+
+	public void testCleanUp() throws Exception {
+		CASDBProxyGrantingTicketStorage storage1 =
+			new CASDBProxyGrantingTicketStorage(100, 0);
+		CASDBProxyGrantingTicketStorage storage2 =
+			new CASDBProxyGrantingTicketStorage(60000, 0);
+
+		for (int i = 0; i < 10; i++) {
+			storage1.save("PGTIOU-EXPIRED-" + i, "PGT-EXPIRED-" + i);
+		}
+
+		for (int i = 0; i < 5; i++) {
+			storage2.save("PGTIOU-" + i, "PGT-" + i);
+		}
+
+		assertEquals(15, getTicketCount());
+
+		Thread.sleep(200);
+
+		storage2.cleanUp();
+
+		assertEquals(5, getTicketCount());
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals("PGT-" + i, storage1.retrieve("PGTIOU-" + i));
+		}
+
+		assertEquals(0, getTicketCount());
+	}
+
+	public void testExpiration() throws Exception {
+		CASDBProxyGrantingTicketStorage storage1 =
+			new CASDBProxyGrantingTicketStorage(100, 0);
+		CASDBProxyGrantingTicketStorage storage2 =
+			new CASDBProxyGrantingTicketStorage(100, 0);
+
+		storage1.save("PGTIOU-1", "PGT-1");
+
+		Thread.sleep(200);
+
+		assertNull(storage2.retrieve("PGTIOU-1"));
+
+		// An expired ticket is still removed when it is asked for
+
+		assertEquals(0, getTicketCount());
+	}
+
+	public void testRetrieveFromOtherNode() throws Exception {
+		CASDBProxyGrantingTicketStorage storage1 =
+			new CASDBProxyGrantingTicketStorage(60000, 0);
+		CASDBProxyGrantingTicketStorage storage2 =
+			new CASDBProxyGrantingTicketStorage(60000, 0);
+
+		// The second node finds the table the first node created
+
+		storage1.save("PGTIOU-1", "PGT-1");
+
+		assertEquals("PGT-1", storage2.retrieve("PGTIOU-1"));
+		assertNull(storage1.retrieve("PGTIOU-1"));
+		assertNull(storage2.retrieve("PGTIOU-1"));
+		assertNull(storage2.retrieve("PGTIOU-UNKNOWN"));
+	}
+
+	public void testRetrieveOnceAcrossNodes() throws Exception {
+		final int ticketCount = 500;
+
+		CASDBProxyGrantingTicketStorage storage1 =
+			new CASDBProxyGrantingTicketStorage(60000, 0);
+		CASDBProxyGrantingTicketStorage storage2 =
+			new CASDBProxyGrantingTicketStorage(60000, 0);
+
+		for (int i = 0; i < ticketCount; i++) {
+			storage1.save("PGTIOU-" + i, "PGT-" + i);
+		}
+
+		final AtomicIntegerArray retrievedCounts = new AtomicIntegerArray(
+			ticketCount);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+
+		for (int i = 0; i < 4; i++) {
+			final CASDBProxyGrantingTicketStorage storage =
+				((i % 2) == 0) ? storage1 : storage2;
+
+			futures.add(
+				executorService.submit(
+					new Callable<Object>() {
+
+						public Object call() throws Exception {
+							startLatch.await();
+
+							for (int j = 0; j < ticketCount; j++) {
+								String proxyGrantingTicket = storage.retrieve(
+									"PGTIOU-" + j);
+
+								if (proxyGrantingTicket != null) {
+									assertEquals(
+										"PGT-" + j, proxyGrantingTicket);
+
+									retrievedCounts.incrementAndGet(j);
+								}
+							}
+
+							return null;
+						}
+
+					}));
+		}
+
+		startLatch.countDown();
+
+		for (Future<Object> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+
+		executorService.shutdown();
+
+		for (int i = 0; i < ticketCount; i++) {
+			assertEquals(1, retrievedCounts.get(i));
+		}
+
+		assertEquals(0, getTicketCount());
+	}
+
+	protected int getTicketCount() throws Exception {
+		Connection con = _dataSource.getConnection();
+
+		try {
+			Statement statement = con.createStatement();
+
+			ResultSet rs = statement.executeQuery(
+				"select count(*) from CAS_ProxyGrantingTicket");
+
+			rs.next();
+
+			return rs.getInt(1);
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	protected void runSQL(String sql) throws Exception {
+		Connection con = _dataSource.getConnection();
+
+		try {
+			Statement statement = con.createStatement();
+
+			statement.executeUpdate(sql);
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	private jdbcDataSource _dataSource;
+
+}
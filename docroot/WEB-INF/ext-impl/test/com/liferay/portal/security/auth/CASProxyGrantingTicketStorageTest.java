@@ -0,0 +1,287 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.test.TestCase;
+import com.liferay.portal.kernel.util.Time;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress tests the timing wheel storage from several threads. The wheel runs
+ * on a test clock so that expiration does not depend on the speed of the
+ * machine.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASProxyGrantingTicketStorageTest extends TestCase {
+
+	public void testExpiration() throws Exception {
+		CASProxyGrantingTicketStorage storage = new TestStorage(
+			5 * Time.SECOND, 1000);
+
+		for (int i = 0; i < 100; i++) {
+			storage.save("PGTIOU-" + i, "PGT-" + i);
+		}
+
+		_tick.addAndGet(4);
+
+		assertEquals("PGT-0", storage.retrieve("PGTIOU-0"));
+		assertEquals(99, storage.getSize());
+
+		_tick.addAndGet(1);
+
+		assertNull(storage.retrieve("PGTIOU-1"));
+
+		storage.cleanUp();
+
+		assertEquals(0, storage.getSize());
+
+		for (int i = 2; i < 100; i++) {
+			assertNull(storage.retrieve("PGTIOU-" + i));
+		}
+	}
+
+	public void testRetrieveOnce() throws Exception {
+		final int ticketCount = 20000;
+
+		final CASProxyGrantingTicketStorage storage = new TestStorage(
+			60 * Time.SECOND, ticketCount);
+
+		for (int i = 0; i < ticketCount; i++) {
+			storage.save("PGTIOU-" + i, "PGT-" + i);
+		}
+
+		assertEquals(ticketCount, storage.getSize());
+
+		final AtomicIntegerArray retrievedCounts = new AtomicIntegerArray(
+			ticketCount);
+
+		run(
+			new Callable<Object>() {
+
+				public Object call() throws Exception {
+					for (int i = 0; i < ticketCount; i++) {
+						String proxyGrantingTicket = storage.retrieve(
+							"PGTIOU-" + i);
+
+						if (proxyGrantingTicket != null) {
+							assertEquals("PGT-" + i, proxyGrantingTicket);
+
+							retrievedCounts.incrementAndGet(i);
+						}
+					}
+
+					return null;
+				}
+
+			});
+
+		for (int i = 0; i < ticketCount; i++) {
+			assertEquals(1, retrievedCounts.get(i));
+		}
+
+		assertEquals(0, storage.getSize());
+	}
+
+	public void testSaveRetrieveAndExpireConcurrently() throws Exception {
+		final int ticketCount = 20000;
+		final int timeToLiveTicks = 3;
+
+		final CASProxyGrantingTicketStorage storage = new TestStorage(
+			timeToLiveTicks * Time.SECOND, 1000);
+
+		final AtomicIntegerArray retrievedCounts = new AtomicIntegerArray(
+			_THREAD_COUNT * ticketCount);
+		final AtomicLong threadCount = new AtomicLong();
+		final AtomicBoolean running = new AtomicBoolean(true);
+
+		Thread clockThread = new Thread() {
+
+			public void run() {
+				while (running.get()) {
+					_tick.incrementAndGet();
+
+					Thread.yield();
+				}
+			}
+
+		};
+
+		clockThread.start();
+
+		try {
+			run(
+				new Callable<Object>() {
+
+					public Object call() throws Exception {
+						int offset =
+							(int)threadCount.getAndIncrement() * ticketCount;
+
+						for (int i = 0; i < ticketCount; i++) {
+							String proxyGrantingTicketIou =
+								"PGTIOU-" + (offset + i);
+
+							storage.save(
+								proxyGrantingTicketIou, "PGT-" + (offset + i));
+
+							assertTrue(storage.getSize() <= 1000);
+
+							// Retrieve the ticket saved a little earlier, it
+							// may have expired or been evicted meanwhile
+
+							if (i >= 10) {
+								int j = offset + i - 10;
+
+								if (storage.retrieve("PGTIOU-" + j) != null) {
+									retrievedCounts.incrementAndGet(j);
+								}
+							}
+						}
+
+						return null;
+					}
+
+				});
+		}
+		finally {
+			running.set(false);
+
+			clockThread.join();
+		}
+
+		for (int i = 0; i < retrievedCounts.length(); i++) {
+			assertTrue(retrievedCounts.get(i) <= 1);
+		}
+
+		// Every ticket left expires once the wheel has turned past it
+
+		_tick.addAndGet(timeToLiveTicks + 2);
+
+		storage.cleanUp();
+
+		assertEquals(0, storage.getSize());
+	}
+
+	public void testSizeBound() throws Exception {
+		final int maxSize = 100;
+		final int ticketCount = 10000;
+
+		final CASProxyGrantingTicketStorage storage = new TestStorage(
+			60 * Time.SECOND, maxSize);
+
+		final AtomicLong threadCount = new AtomicLong();
+
+		run(
+			new Callable<Object>() {
+
+				public Object call() throws Exception {
+					int offset =
+						(int)threadCount.getAndIncrement() * ticketCount;
+
+					for (int i = 0; i < ticketCount; i++) {
+						storage.save(
+							"PGTIOU-" + (offset + i), "PGT-" + (offset + i));
+
+						assertTrue(storage.getSize() <= maxSize);
+					}
+
+					return null;
+				}
+
+			});
+
+		assertTrue(storage.getSize() <= maxSize);
+		assertTrue(storage.getEvictionCount() > 0);
+
+		// The size counter matches the tickets that are really stored
+
+		int storedCount = 0;
+
+		for (int i = 0; i < (_THREAD_COUNT * ticketCount); i++) {
+			if (storage.retrieve("PGTIOU-" + i) != null) {
+				storedCount++;
+			}
+		}
+
+		assertTrue(storedCount <= maxSize);
+		assertEquals(0, storage.getSize());
+	}
+
+	/**
+	 * Runs the callable on several threads at once and rethrows the first
+	 * failure.
+	 */
+	protected void run(final Callable<Object> callable) throws Exception {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+
+		ExecutorService executorService = Executors.newFixedThreadPool(
+			_THREAD_COUNT);
+
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+
+			for (int i = 0; i < _THREAD_COUNT; i++) {
+				futures.add(
+					executorService.submit(
+						new Callable<Object>() {
+
+							public Object call() throws Exception {
+								startLatch.await();
+
+								return callable.call();
+							}
+
+						}));
+			}
+
+			startLatch.countDown();
+
+			for (Future<Object> future : futures) {
+				future.get(120, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private static final int _THREAD_COUNT = 8;
+
+	private AtomicLong _tick = new AtomicLong(1000);
+
+	private class TestStorage extends CASProxyGrantingTicketStorage {
+
+		public TestStorage(long timeToLive, int maxSize) {
+			super(timeToLive, maxSize);
+		}
+
+		protected long getTick() {
+			return _tick.get();
+		}
+
+	}
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2000-2011 Liferay, Inc. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ */
+
+package com.liferay.portal.security.auth;
+
+import com.liferay.portal.kernel.test.TestCase;
+import com.liferay.portal.kernel.util.StringPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Parses sample CAS 2.0 and 3.0 protocol responses, including responses that
+ * try to read a local file through an external entity.
+ *
+ * @author William G. Thompson, Jr.
+ */
+public class CASResponseParserTest extends TestCase {
+
+	public void testClearPassCredentials() throws Exception {
+		String xml =
+			"<cas:clearPassResponse xmlns:cas=\"http://www.yale.edu/tp/cas\">" +
+				"<cas:clearPassSuccess>" +
+					"<cas:credentials>p&amp;ss w&lt;rd</cas:credentials>" +
+				"</cas:clearPassSuccess>" +
+			"</cas:clearPassResponse>";
+
+		String[] element = CASResponseParser.getFirstElementText(
+			getInputStream(xml), "credentials");
+
+		assertEquals("credentials", element[0]);
+		assertEquals("p&ss w<rd", element[1]);
+		assertNull(element[2]);
+	}
+
+	public void testClearPassFailure() throws Exception {
+		String xml =
+			"<cas:clearPassResponse xmlns:cas=\"http://www.yale.edu/tp/cas\">" +
+				"<cas:clearPassFailure>No credentials</cas:clearPassFailure>" +
+			"</cas:clearPassResponse>";
+
+		assertNull(
+			CASResponseParser.getFirstElementText(
+				getInputStream(xml), "credentials"));
+	}
+
+	public void testExternalEntity() throws Exception {
+		File file = File.createTempFile("cas", ".txt");
+
+		try {
+			OutputStream outputStream = new FileOutputStream(file);
+
+			try {
+				outputStream.write(_SECRET.getBytes(StringPool.UTF8));
+			}
+			finally {
+				outputStream.close();
+			}
+
+			String xml =
+				"<?xml version=\"1.0\"?>" +
+				"<!DOCTYPE cas:serviceResponse [" +
+					"<!ENTITY xxe SYSTEM \"" + file.toURI() + "\">" +
+				"]>" +
+				"<cas:serviceResponse " +
+					"xmlns:cas=\"http://www.yale.edu/tp/cas\">" +
+					"<cas:authenticationSuccess>" +
+						"<cas:user>&xxe;</cas:user>" +
+						"<cas:attributes>" +
+							"<cas:mail>&xxe;</cas:mail>" +
+						"</cas:attributes>" +
+					"</cas:authenticationSuccess>" +
+				"</cas:serviceResponse>";
+
+			// Rejecting the response is as good as ignoring the entity
+
+			try {
+				String[] element = CASResponseParser.getFirstElementText(
+					getInputStream(xml), "user");
+
+				if (element != null) {
+					assertFalse(element[1].contains(_SECRET));
+				}
+			}
+			catch (XMLStreamException xmlse) {
+			}
+
+			try {
+				Map<String, Object> attributes =
+					CASResponseParser.getAttributes(new StringReader(xml));
+
+				Object mail = attributes.get("mail");
+
+				if (mail != null) {
+					assertFalse(String.valueOf(mail).contains(_SECRET));
+				}
+			}
+			catch (XMLStreamException xmlse) {
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	public void testProxyFailure() throws Exception {
+		String xml =
+			"<cas:serviceResponse xmlns:cas=\"http://www.yale.edu/tp/cas\">" +
+				"<cas:proxyFailure code=\"INVALID_REQUEST\">" +
+					"'pgt' and 'targetService' parameters are both required" +
+				"</cas:proxyFailure>" +
+			"</cas:serviceResponse>";
+
+		String[] element = CASResponseParser.getFirstElementText(
+			getInputStream(xml), "proxyFailure", "proxyTicket");
+
+		assertEquals("proxyFailure", element[0]);
+		assertEquals(
+			"'pgt' and 'targetService' parameters are both required",
+			element[1]);
+		assertEquals("INVALID_REQUEST", element[2]);
+	}
+
+	public void testProxySuccess() throws Exception {
+		String xml =
+			"<cas:serviceResponse xmlns:cas=\"http://www.yale.edu/tp/cas\">" +
+				"<cas:proxySuccess>" +
+					"<cas:proxyTicket>PT-1-abc</cas:proxyTicket>" +
+				"</cas:proxySuccess>" +
+			"</cas:serviceResponse>";
+
+		String[] element = CASResponseParser.getFirstElementText(
+			getInputStream(xml), "proxyFailure", "proxyTicket");
+
+		assertEquals("proxyTicket", element[0]);
+		assertEquals("PT-1-abc", element[1]);
+	}
+
+	public void testValidationFailure() throws Exception {
+		String xml =
+			"<cas:serviceResponse xmlns:cas=\"http://www.yale.edu/tp/cas\">" +
+				"<cas:authenticationFailure code=\"INVALID_TICKET\">\n" +
+					"\tTicket ST-1-abc not recognized\n" +
+				"</cas:authenticationFailure>" +
+			"</cas:serviceResponse>";
+
+		String[] element = CASResponseParser.getFirstElementText(
+			getInputStream(xml), "authenticationFailure", "user");
+
+		assertEquals("authenticationFailure", element[0]);
+		assertEquals("Ticket ST-1-abc not recognized", element[1]);
+		assertEquals("INVALID_TICKET", element[2]);
+
+		Map<String, Object> attributes = CASResponseParser.getAttributes(
+			new StringReader(xml));
+
+		assertTrue(attributes.isEmpty());
+	}
+
+	public void testValidationSuccess() throws Exception {
+		String xml =
+			"<cas:serviceResponse xmlns:cas=\"http://www.yale.edu/tp/cas\">" +
+				"<cas:authenticationSuccess>" +
+					"<cas:user>jdoe</cas:user>" +
+					"<cas:attributes>" +
+						"<cas:mail>jdoe@example.org</cas:mail>" +
+						"<cas:memberOf>" +
+							"cn=Staff,ou=Groups,dc=example,dc=org" +
+						"</cas:memberOf>" +
+						"<cas:memberOf>cn=Faculty,ou=Groups</cas:memberOf>" +
+						"<cas:memberOf>Alumni</cas:memberOf>" +
+					"</cas:attributes>" +
+					"<cas:proxyGrantingTicket>" +
+						"PGTIOU-1-abc" +
+					"</cas:proxyGrantingTicket>" +
+				"</cas:authenticationSuccess>" +
+			"</cas:serviceResponse>";
+
+		String[] element = CASResponseParser.getFirstElementText(
+			getInputStream(xml), "authenticationFailure", "user");
+
+		assertEquals("user", element[0]);
+		assertEquals("jdoe", element[1]);
+
+		element = CASResponseParser.getFirstElementText(
+			getInputStream(xml), "proxyGrantingTicket");
+
+		assertEquals("PGTIOU-1-abc", element[1]);
+
+		Map<String, Object> attributes = CASResponseParser.getAttributes(
+			new StringReader(xml));
+
+		assertEquals(2, attributes.size());
+		assertEquals("jdoe@example.org", attributes.get("mail"));
+
+		List<?> memberOf = (List<?>)attributes.get("memberOf");
+
+		assertEquals(3, memberOf.size());
+		assertEquals("cn=Staff,ou=Groups,dc=example,dc=org", memberOf.get(0));
+		assertEquals("cn=Faculty,ou=Groups", memberOf.get(1));
+		assertEquals("Alumni", memberOf.get(2));
+	}
+
+	protected InputStream getInputStream(String xml) throws Exception {
+		return new ByteArrayInputStream(xml.getBytes(StringPool.UTF8));
+	}
+
+	private static final String _SECRET = "do-not-leak";
+
+}
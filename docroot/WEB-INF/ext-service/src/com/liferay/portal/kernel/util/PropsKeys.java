@@ -268,14 +268,76 @@ public interface PropsKeys {
 
 	public static final String CAPTCHA_MAX_CHALLENGES = "captcha.max.challenges";
 
+	public static final String CAS_ASSERTION_USER_MAPPINGS = "cas.assertion.user.mappings";
+
 	public static final String CAS_AUTH_ENABLED = "cas.auth.enabled";
 
+	public static final String CAS_BACK_CHANNEL_CIRCUIT_BREAKER_ENABLED = "cas.back.channel.circuit.breaker.enabled";
+
+	public static final String CAS_BACK_CHANNEL_CIRCUIT_BREAKER_FAILURE_THRESHOLD = "cas.back.channel.circuit.breaker.failure.threshold";
+
+	public static final String CAS_BACK_CHANNEL_CIRCUIT_BREAKER_OPEN_TIME = "cas.back.channel.circuit.breaker.open.time";
+
+	public static final String CAS_BACK_CHANNEL_TIME_BUDGET = "cas.back.channel.time.budget";
+
+	public static final String CAS_IMPORT_FROM_ASSERTION = "cas.import.from.assertion";
+
 	public static final String CAS_IMPORT_FROM_LDAP = "cas.import.from.ldap";
 
+	public static final String CAS_LDAP_BULKHEAD_MAX_CONCURRENT = "cas.ldap.bulkhead.max.concurrent";
+
+	public static final String CAS_LDAP_BULKHEAD_MAX_WAIT = "cas.ldap.bulkhead.max.wait";
+
+	public static final String CAS_LDAP_CIRCUIT_BREAKER_ENABLED = "cas.ldap.circuit.breaker.enabled";
+
+	public static final String CAS_LDAP_CIRCUIT_BREAKER_FAILURE_THRESHOLD = "cas.ldap.circuit.breaker.failure.threshold";
+
+	public static final String CAS_LDAP_CIRCUIT_BREAKER_OPEN_TIME = "cas.ldap.circuit.breaker.open.time";
+
+	public static final String CAS_LDAP_HEALTH_EJECTION_FAILURES = "cas.ldap.health.ejection.failures";
+
+	public static final String CAS_LDAP_HEALTH_EJECTION_TIME = "cas.ldap.health.ejection.time";
+
+	public static final String CAS_LDAP_HEALTH_ENABLED = "cas.ldap.health.enabled";
+
+	public static final String CAS_LDAP_NEGATIVE_CACHE_ENABLED = "cas.ldap.negative.cache.enabled";
+
+	public static final String CAS_LDAP_NEGATIVE_CACHE_MAX_SIZE = "cas.ldap.negative.cache.max.size";
+
+	public static final String CAS_LDAP_NEGATIVE_CACHE_TIME_TO_LIVE = "cas.ldap.negative.cache.time.to.live";
+
+	public static final String CAS_LDAP_POOL_ENABLED = "cas.ldap.pool.enabled";
+
+	public static final String CAS_LDAP_POOL_MAX_IDLE_TIME = "cas.ldap.pool.max.idle.time";
+
+	public static final String CAS_LDAP_POOL_MAX_SIZE = "cas.ldap.pool.max.size";
+
+	public static final String CAS_LDAP_POOL_MAX_WAIT = "cas.ldap.pool.max.wait";
+
+	public static final String CAS_LDAP_POOL_VALIDATE_ON_BORROW = "cas.ldap.pool.validate.on.borrow";
+
+	public static final String CAS_LDAP_SEARCH_PARALLEL = "cas.ldap.search.parallel";
+
+	public static final String CAS_LDAP_SEARCH_TIMEOUT = "cas.ldap.search.timeout";
+
+	public static final String CAS_LDAP_SKIP_UNCHANGED = "cas.ldap.skip.unchanged";
+
+	public static final String CAS_LDAP_SYNC_INTERVAL = "cas.ldap.sync.interval";
+
+	public static final String CAS_LDAP_SYNC_MAX_SIZE = "cas.ldap.sync.max.size";
+
 	public static final String CAS_LOGIN_URL = "cas.login.url";
 
 	public static final String CAS_LOGOUT_URL = "cas.logout.url";
 
+	public static final String CAS_MEMBERSHIP_ATTRIBUTE = "cas.membership.attribute";
+
+	public static final String CAS_MEMBERSHIP_ROLE_NAMES = "cas.membership.role.names";
+
+	public static final String CAS_MEMBERSHIP_SYNC_ENABLED = "cas.membership.sync.enabled";
+
+	public static final String CAS_MEMBERSHIP_USER_GROUP_NAMES = "cas.membership.user.group.names";
+
 	public static final String CAS_SERVER_NAME = "cas.server.name";
 
 	public static final String CAS_SERVER_URL = "cas.server.url";
@@ -288,6 +350,46 @@ public interface PropsKeys {
 
 	public static final String CAS_CLEARPASS_ENABLED = "cas.clearpass.enabled";
 
+	public static final String CAS_CLEARPASS_LAZY = "cas.clearpass.lazy";
+
+	public static final String CAS_EXECUTOR_POOL_SIZE = "cas.executor.pool.size";
+
+	public static final String CAS_EXECUTOR_QUEUE_SIZE = "cas.executor.queue.size";
+
+	public static final String CAS_HTTP_CONNECTION_TIMEOUT = "cas.http.connection.timeout";
+
+	public static final String CAS_HTTP_MAX_CONNECTIONS_PER_HOST = "cas.http.max.connections.per.host";
+
+	public static final String CAS_HTTP_MAX_TOTAL_CONNECTIONS = "cas.http.max.total.connections";
+
+	public static final String CAS_HTTP_SO_TIMEOUT = "cas.http.so.timeout";
+
+	public static final String CAS_PROXY_GRANTING_TICKET_CLEAN_UP_INTERVAL = "cas.proxy.granting.ticket.clean.up.interval";
+
+	public static final String CAS_PROXY_GRANTING_TICKET_MAX_SIZE = "cas.proxy.granting.ticket.max.size";
+
+	public static final String CAS_PROXY_GRANTING_TICKET_TIME_TO_LIVE = "cas.proxy.granting.ticket.time.to.live";
+
+	public static final String CAS_SESSION_COMPACT_ATTRIBUTES = "cas.session.compact.attributes";
+
+	public static final String CAS_SESSION_COMPACT_ENABLED = "cas.session.compact.enabled";
+
+	public static final String CAS_SETTINGS_TIME_TO_LIVE = "cas.settings.time.to.live";
+
+	public static final String CAS_USER_CACHE_ENABLED = "cas.user.cache.enabled";
+
+	public static final String CAS_USER_CACHE_MAX_SIZE = "cas.user.cache.max.size";
+
+	public static final String CAS_USER_CACHE_REFRESH_AHEAD = "cas.user.cache.refresh.ahead";
+
+	public static final String CAS_USER_CACHE_TIME_TO_LIVE = "cas.user.cache.time.to.live";
+
+	public static final String CAS_VALIDATION_EXECUTOR_MAX_SIZE = "cas.validation.executor.max.size";
+
+	public static final String CAS_VALIDATION_MAX_CONCURRENT = "cas.validation.max.concurrent";
+
+	public static final String CAS_VALIDATION_MAX_WAIT = "cas.validation.max.wait";
+
 	public static final String CDN_HOST_HTTP = "cdn.host.http";
 
 	public static final String CDN_HOST_HTTPS = "cdn.host.https";